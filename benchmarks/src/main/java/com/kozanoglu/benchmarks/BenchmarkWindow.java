@@ -0,0 +1,20 @@
+package com.kozanoglu.benchmarks;
+
+import com.kozanoglu.service.statistics.StatisticsWindow;
+
+/**
+ * The window the benchmarks run on, a minute of one second buckets as configured by default.
+ * The engine around it is built with a {@link com.kozanoglu.service.statistics.StatisticsServiceBuilder}.
+ */
+final class BenchmarkWindow {
+
+    static final long WINDOW_MILLIS = 60_000L;
+    static final long BUCKET_MILLIS = 1_000L;
+
+    private BenchmarkWindow() {
+    }
+
+    static StatisticsWindow create(boolean striped, boolean percentiles) {
+        return new StatisticsWindow(WINDOW_MILLIS, BUCKET_MILLIS, striped, percentiles);
+    }
+}
@@ -0,0 +1,90 @@
+package com.kozanoglu.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kozanoglu.model.statistics.Transaction;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.util.CachedClock;
+
+/**
+ * Ingest path of a single writer and of contended writers, with and without striped buckets and percentiles.
+ * Timestamps are spread over the last few seconds, so writers share buckets the way live traffic does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"false", "true"})
+    public boolean striped;
+
+    @Param({"false", "true"})
+    public boolean percentiles;
+
+    private CachedClock clock;
+    private StatisticsService statisticsService;
+
+    @Setup
+    public void setUp() {
+        clock = new CachedClock(1);
+        clock.start();
+        statisticsService = new StatisticsServiceBuilder(BenchmarkWindow.create(striped, percentiles))
+                .clock(clock).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        clock.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public IngestOutcome persistSingleWriter() {
+        return persist();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public IngestOutcome persistFourWriters() {
+        return persist();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public IngestOutcome persistAllCores() {
+        return persist();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public IngestOutcome persistTransactionDto() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return statisticsService.persistTransaction(
+                new Transaction(random.nextDouble(1000), clock.currentTimeMillis() - random.nextInt(5000)));
+    }
+
+    private IngestOutcome persist() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return statisticsService.persist(clock.currentTimeMillis() - random.nextInt(5000), random.nextDouble(1000));
+    }
+}
@@ -0,0 +1,124 @@
+package com.kozanoglu.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.util.CachedClock;
+
+/**
+ * Reads of the window statistics racing writes, write heavy (3 writers per reader), balanced and read heavy
+ * (3 readers per writer). Readers either fold the window or read percentiles off the merged histograms.
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    @Param({"false", "true"})
+    public boolean striped;
+
+    private CachedClock clock;
+    private StatisticsService statisticsService;
+
+    @Setup
+    public void setUp() {
+        clock = new CachedClock(1);
+        clock.start();
+        statisticsService = new StatisticsServiceBuilder(BenchmarkWindow.create(striped, true)).clock(clock).build();
+        // a full window to read from the start
+        long now = clock.currentTimeMillis();
+        for (int i = 0; i < 100_000; i++) {
+            statisticsService.persist(now - i % BenchmarkWindow.WINDOW_MILLIS, i % 1000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        clock.close();
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(3)
+    public IngestOutcome writeHeavyWrite() {
+        return persist();
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public StatisticsResult writeHeavyRead() {
+        return statisticsService.getStatisticsForTheLastMinute();
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(2)
+    public IngestOutcome balancedWrite() {
+        return persist();
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(2)
+    public StatisticsResult balancedRead() {
+        return statisticsService.getStatisticsForTheLastMinute();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public IngestOutcome readHeavyWrite() {
+        return persist();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(3)
+    public StatisticsResult readHeavyRead() {
+        return statisticsService.getStatisticsForTheLastMinute();
+    }
+
+    @Benchmark
+    @Group("percentiles")
+    @GroupThreads(3)
+    public IngestOutcome percentilesWrite() {
+        return persist();
+    }
+
+    @Benchmark
+    @Group("percentiles")
+    @GroupThreads(1)
+    public StatisticsResult percentilesRead() {
+        return statisticsService.getStatisticsForTheLastMinute(PERCENTILES);
+    }
+
+    private IngestOutcome persist() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return statisticsService.persist(clock.currentTimeMillis() - random.nextInt(5000), random.nextDouble(1000));
+    }
+}
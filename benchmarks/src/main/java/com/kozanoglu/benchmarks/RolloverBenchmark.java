@@ -0,0 +1,59 @@
+package com.kozanoglu.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+
+/**
+ * Worst case of the ring: a clock moving a whole bucket per operation, so every write swaps a fresh bucket
+ * into a slot whose bucket just left the window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RolloverBenchmark {
+
+    @Param({"false", "true"})
+    public boolean percentiles;
+
+    private long now;
+    private StatisticsService statisticsService;
+
+    @Setup
+    public void setUp() {
+        now = System.currentTimeMillis();
+        statisticsService = new StatisticsServiceBuilder(BenchmarkWindow.create(false, percentiles))
+                .clock(() -> now).build();
+    }
+
+    @Benchmark
+    public IngestOutcome persistIntoNewBucket() {
+        now += BenchmarkWindow.BUCKET_MILLIS;
+        return statisticsService.persist(now, 1.0);
+    }
+
+    @Benchmark
+    public StatisticsResult readAfterRollover() {
+        now += BenchmarkWindow.BUCKET_MILLIS;
+        statisticsService.persist(now, 1.0);
+        return statisticsService.getStatisticsForTheLastMinute();
+    }
+}
@@ -0,0 +1,72 @@
+package com.kozanoglu.benchmarks;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kozanoglu.util.EventTime;
+import com.kozanoglu.util.TimeUtil;
+
+/**
+ * Timestamp conversions of the hot path, next to the {@code Calendar} based second lookup they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeUtilBenchmark {
+
+    private long now;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        now = System.currentTimeMillis();
+        timestamp = now - 12_345;
+    }
+
+    @Benchmark
+    public int secondFromTimestamp() {
+        return TimeUtil.getSecondFromTimestamp(timestamp);
+    }
+
+    @Benchmark
+    public int secondFromTimestampWithCalendar() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(new Date(timestamp));
+        return calendar.get(Calendar.SECOND);
+    }
+
+    @Benchmark
+    public long bucketIndex() {
+        return TimeUtil.getBucketIndex(timestamp, BenchmarkWindow.BUCKET_MILLIS);
+    }
+
+    @Benchmark
+    public long oldestBucketIndex() {
+        return TimeUtil.getOldestBucketIndexWithinWindow(now, BenchmarkWindow.WINDOW_MILLIS, BenchmarkWindow.BUCKET_MILLIS);
+    }
+
+    @Benchmark
+    public EventTime classify() {
+        return TimeUtil.classify(timestamp, now, BenchmarkWindow.WINDOW_MILLIS, 2_000);
+    }
+
+    @Benchmark
+    public long systemClock() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,300 @@
+package com.kozanoglu.benchmarks.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.kozanoglu.Application;
+
+/**
+ * Open-loop HTTP load against {@code POST /transactions} and {@code GET /statistics/}. Requests are scheduled
+ * at a fixed rate whatever the server does, each connection picks the next scheduled request and sends it
+ * once it is due. Latency is measured from the scheduled time rather than from the actual send, so requests
+ * queued behind a stalled server count their wait too (coordinated omission correction). The plain service time
+ * from the actual send is reported next to it.
+ * <p>
+ * Without {@code url} the application is booted in process on a random port. Options are {@code key=value} pairs:
+ * {@code rate} requests per second, {@code connections}, {@code duration} and {@code warmup} in seconds,
+ * {@code reads} the share of statistics reads between 0 and 1, {@code url} of an already running instance.
+ */
+public final class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final String LOGIN_BODY = "{\"username\":\"admin\",\"password\":\"password\"}";
+
+    private final String url;
+    private final String token;
+    private final long rate;
+    private final int connections;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final double reads;
+
+    private LoadGenerator(String url, String token, Options options) {
+        this.url = url;
+        this.token = token;
+        this.rate = options.getLong("rate", 1000);
+        this.connections = (int) options.getLong("connections", 64);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(options.getLong("duration", 30));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(options.getLong("warmup", 5));
+        this.reads = options.getDouble("reads", 0.1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        String url = options.get("url", null);
+        ConfigurableApplicationContext context = null;
+        if (url == null) {
+            context = SpringApplication.run(Application.class, "--server.port=0", "--logging.level.root=WARN");
+            url = "http://localhost:" + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+        }
+
+        try {
+            new LoadGenerator(url, login(url), options).run().print(System.out);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private Report run() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        AtomicLong sequence = new AtomicLong();
+
+        List<Worker> workers = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Worker worker = new Worker(sequence, start, intervalNanos, measureFrom, end);
+            worker.setName("load-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        Report report = new Report(rate, durationNanos);
+        for (Worker worker : workers) {
+            worker.join();
+            report.add(worker);
+        }
+        return report;
+    }
+
+    private static String login(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + "/login").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(LOGIN_BODY.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String token = connection.getHeaderField("Authorization");
+        drain(connection);
+        if (token == null) {
+            throw new IllegalStateException("Login at " + url + " answered " + connection.getResponseCode() + " without a token");
+        }
+        return token;
+    }
+
+    private static void drain(HttpURLConnection connection) throws IOException {
+        // reading the body to the end hands the connection back to the keep-alive cache
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+            in.close();
+        }
+    }
+
+    /**
+     * A connection sending scheduled requests one after the other, with histograms of its own.
+     */
+    private final class Worker extends Thread {
+
+        private final AtomicLong sequence;
+        private final long start;
+        private final long intervalNanos;
+        private final long measureFrom;
+        private final long end;
+
+        private final Histogram writeResponse = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram writeService = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram readResponse = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram readService = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private long errors;
+
+        private Worker(AtomicLong sequence, long start, long intervalNanos, long measureFrom, long end) {
+            this.sequence = sequence;
+            this.start = start;
+            this.intervalNanos = intervalNanos;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long request = sequence.getAndIncrement();
+                long scheduled = start + request * intervalNanos;
+                if (scheduled >= end) {
+                    return;
+                }
+
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                // spread reads evenly over the schedule
+                boolean read = (request % 1000) < reads * 1000;
+                long sent = System.nanoTime();
+                boolean ok = read ? getStatistics() : postTransaction();
+                long done = System.nanoTime();
+
+                if (scheduled >= measureFrom) {
+                    record(read ? readResponse : writeResponse, done - scheduled);
+                    record(read ? readService : writeService, done - sent);
+                    if (!ok) {
+                        errors++;
+                    }
+                }
+            }
+        }
+
+        private boolean postTransaction() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String body = "{\"amount\":" + random.nextInt(1, 100_000) / 100.0 + ",\"timestamp\":" + System.currentTimeMillis() + "}";
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url + "/transactions").openConnection();
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setRequestProperty("Authorization", token);
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+                drain(connection);
+                return connection.getResponseCode() == 201;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private boolean getStatistics() {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url + "/statistics/").openConnection();
+                connection.setRequestProperty("Authorization", token);
+                drain(connection);
+                return connection.getResponseCode() == 200;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void record(Histogram histogram, long nanos) {
+            histogram.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+        }
+    }
+
+    /**
+     * Histograms of all workers merged, printed in milliseconds.
+     */
+    private static final class Report {
+
+        private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+        private final long rate;
+        private final long durationNanos;
+        private final Histogram writeResponse = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram writeService = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram readResponse = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram readService = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private long errors;
+
+        private Report(long rate, long durationNanos) {
+            this.rate = rate;
+            this.durationNanos = durationNanos;
+        }
+
+        private void add(Worker worker) {
+            writeResponse.add(worker.writeResponse);
+            writeService.add(worker.writeService);
+            readResponse.add(worker.readResponse);
+            readService.add(worker.readService);
+            errors += worker.errors;
+        }
+
+        private void print(PrintStream out) {
+            long requests = writeResponse.getTotalCount() + readResponse.getTotalCount();
+            out.printf("target rate %d/s, achieved %.1f/s, %d requests, %d errors%n",
+                    rate, requests / (durationNanos / 1e9), requests, errors);
+            print(out, "POST /transactions response time (corrected)", writeResponse);
+            print(out, "POST /transactions service time", writeService);
+            print(out, "GET /statistics/ response time (corrected)", readResponse);
+            print(out, "GET /statistics/ service time", readService);
+        }
+
+        private static void print(PrintStream out, String title, Histogram histogram) {
+            out.printf("%n%s, %d requests%n", title, histogram.getTotalCount());
+            if (histogram.getTotalCount() == 0) {
+                return;
+            }
+            for (double percentile : PERCENTILES) {
+                out.printf("  p%-6s %10.3f ms%n", percentile, histogram.getValueAtPercentile(percentile) / 1e6);
+            }
+            out.printf("  max     %10.3f ms%n", histogram.getMaxValue() / 1e6);
+        }
+    }
+
+    /**
+     * {@code key=value} command line options.
+     */
+    private static final class Options {
+
+        private final Map<String, String> values = new HashMap<>();
+
+        private Options(String[] args) {
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Option [" + arg + "] isn't a key=value pair");
+                }
+                values.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        private String get(String key, String defaultValue) {
+            return values.getOrDefault(key, defaultValue);
+        }
+
+        private long getLong(String key, long defaultValue) {
+            return values.containsKey(key) ? Long.parseLong(values.get(key)) : defaultValue;
+        }
+
+        private double getDouble(String key, double defaultValue) {
+            return values.containsKey(key) ? Double.parseDouble(values.get(key)) : defaultValue;
+        }
+    }
+}
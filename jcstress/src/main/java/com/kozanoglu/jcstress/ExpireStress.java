@@ -0,0 +1,65 @@
+package com.kozanoglu.jcstress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+
+import static com.kozanoglu.jcstress.StressFixtures.NOW;
+
+/**
+ * Buckets expire lazily, the first write of a newer bucket swaps it into the slot of the expired one.
+ * A writer which classified its transaction before the clock moved on may still be writing to the expired bucket
+ * meanwhile, e.g. a batch merging a bucket it aggregated earlier. Its amount has to be dropped, never carried over
+ * into the new bucket, and the new bucket must never be replaced by the expired one.
+ */
+@JCStressTest
+@Description("Write to an expired bucket racing the write which swaps in the new bucket of its slot, and a read")
+@Outcome(id = {"0, 0, 1, 0", "1, 2, 1, 0"}, expect = Expect.ACCEPTABLE,
+        desc = "Read before or after the new transaction, the expired bucket is gone")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Expired amount leaked into the window or the new bucket got lost")
+@State
+public class ExpireStress {
+
+    // the bucket sharing its slot with the bucket of now, one ring ago
+    private static final long EXPIRED = NOW - (StressFixtures.WINDOW_MILLIS + StressFixtures.BUCKET_MILLIS);
+
+    private final StatisticsWindow window = StressFixtures.window(false);
+    private final StatisticsService statisticsService = new StatisticsServiceBuilder(window).clock(() -> NOW).build();
+
+    public ExpireStress() {
+        window.add(EXPIRED, 1.0);
+    }
+
+    @Actor
+    public void late() {
+        window.add(EXPIRED, 1.0);
+    }
+
+    @Actor
+    public void current() {
+        statisticsService.persist(NOW, 2.0);
+    }
+
+    @Actor
+    public void reader(IIII_Result r) {
+        StatisticsResult statistics = statisticsService.getStatisticsForTheLastMinute();
+        r.r1 = statistics.getCount();
+        r.r2 = statistics.getSum().intValue();
+    }
+
+    @Arbiter
+    public void arbiter(IIII_Result r) {
+        r.r3 = window.aggregate(NOW).getCount();
+        r.r4 = window.aggregate(EXPIRED).getCount();
+    }
+}
@@ -0,0 +1,110 @@
+package com.kozanoglu.jcstress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+
+import static com.kozanoglu.jcstress.StressFixtures.NOW;
+
+/**
+ * Reads racing writes. A read which overlaps a writer of the cell is retried, so it sees every transaction of a cell
+ * either in full or not at all: count, sum, min and max always belong to the same transactions.
+ */
+public class PersistReadStress {
+
+    @JCStressTest
+    @Description("Statistics read while a single transaction is persisted")
+    @Outcome(id = "0, 0, 0, 0", expect = Expect.ACCEPTABLE, desc = "Read before the transaction got counted")
+    @Outcome(id = "1, 2, 2, 2", expect = Expect.ACCEPTABLE, desc = "Read after the transaction got counted")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Counted transaction missing from the sum, min or max")
+    @State
+    public static class SingleWriter {
+
+        private final StatisticsService statisticsService =
+                new StatisticsServiceBuilder(StressFixtures.window(false)).clock(() -> NOW).build();
+
+        @Actor
+        public void writer() {
+            statisticsService.persist(NOW, 2.0);
+        }
+
+        @Actor
+        public void reader(IIII_Result r) {
+            StressFixtures.report(statisticsService.getStatisticsForTheLastMinute(), r);
+        }
+    }
+
+    @JCStressTest
+    @Description("Statistics read while two transactions are persisted into the same bucket")
+    @Outcome(id = "0, 0, 0, 0", expect = Expect.ACCEPTABLE, desc = "Read before any transaction got counted")
+    @Outcome(id = "1, 1, 1, 1", expect = Expect.ACCEPTABLE, desc = "Read after the first transaction got counted")
+    @Outcome(id = "1, 2, 2, 2", expect = Expect.ACCEPTABLE, desc = "Read after the second transaction got counted")
+    @Outcome(id = "2, 3, 1, 2", expect = Expect.ACCEPTABLE, desc = "Read after both transactions got counted")
+    @Outcome(id = {"1, 3, 1, 1", "1, 1, 1, 2", "1, 3, 1, 2", "1, 3, 2, 2", "1, 2, 1, 2"}, expect = Expect.FORBIDDEN,
+            desc = "Torn read, parts of a transaction which isn't counted visible")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Counted transaction missing from the sum, min or max")
+    @State
+    public static class TwoWriters {
+
+        private final StatisticsService statisticsService =
+                new StatisticsServiceBuilder(StressFixtures.window(false)).clock(() -> NOW).build();
+
+        @Actor
+        public void first() {
+            statisticsService.persist(NOW, 1.0);
+        }
+
+        @Actor
+        public void second() {
+            statisticsService.persist(NOW, 2.0);
+        }
+
+        @Actor
+        public void reader(IIII_Result r) {
+            StressFixtures.report(statisticsService.getStatisticsForTheLastMinute(), r);
+        }
+    }
+
+    @JCStressTest
+    @Description("Statistics read while three transactions are persisted into the same bucket")
+    @Outcome(id = "0, 0, 0, 0", expect = Expect.ACCEPTABLE, desc = "Read before any transaction got counted")
+    @Outcome(id = {"1, 1, 1, 1", "1, 2, 2, 2", "1, 4, 4, 4"}, expect = Expect.ACCEPTABLE,
+            desc = "Read after one transaction got counted")
+    @Outcome(id = {"2, 3, 1, 2", "2, 5, 1, 4", "2, 6, 2, 4"}, expect = Expect.ACCEPTABLE,
+            desc = "Read after two transactions got counted")
+    @Outcome(id = "3, 7, 1, 4", expect = Expect.ACCEPTABLE, desc = "Read after all transactions got counted")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Torn read or a counted transaction missing from the sum, min or max")
+    @State
+    public static class ThreeWriters {
+
+        private final StatisticsService statisticsService =
+                new StatisticsServiceBuilder(StressFixtures.window(false)).clock(() -> NOW).build();
+
+        @Actor
+        public void first() {
+            statisticsService.persist(NOW, 1.0);
+        }
+
+        @Actor
+        public void second() {
+            statisticsService.persist(NOW, 2.0);
+        }
+
+        @Actor
+        public void third() {
+            statisticsService.persist(NOW, 4.0);
+        }
+
+        @Actor
+        public void reader(IIII_Result r) {
+            StressFixtures.report(statisticsService.getStatisticsForTheLastMinute(), r);
+        }
+    }
+}
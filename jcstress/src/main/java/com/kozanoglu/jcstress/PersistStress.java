@@ -0,0 +1,101 @@
+package com.kozanoglu.jcstress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+
+import static com.kozanoglu.jcstress.StressFixtures.NOW;
+
+/**
+ * Concurrent writes into the same bucket of an empty window, so the writers also race on creating the bucket.
+ * Once all writes are done nothing may be lost: count, sum, min and max cover every transaction.
+ */
+public class PersistStress {
+
+    @JCStressTest
+    @Description("Two transactions persisted into the same, not yet created bucket")
+    @Outcome(id = "2, 3, 1, 2", expect = Expect.ACCEPTABLE, desc = "Both transactions counted")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "A transaction or a part of it got lost")
+    @State
+    public static class SameBucket {
+
+        private final StatisticsWindow window = StressFixtures.window(false);
+        private final StatisticsService statisticsService = new StatisticsServiceBuilder(window).clock(() -> NOW).build();
+
+        @Actor
+        public void first() {
+            statisticsService.persist(NOW, 1.0);
+        }
+
+        @Actor
+        public void second() {
+            statisticsService.persist(NOW, 2.0);
+        }
+
+        @Arbiter
+        public void arbiter(IIII_Result r) {
+            StressFixtures.report(window.aggregate(NOW), r);
+        }
+    }
+
+    @JCStressTest
+    @Description("Two transactions persisted into the same bucket of a striped window, colliding writers move to stripes")
+    @Outcome(id = "2, 3, 1, 2", expect = Expect.ACCEPTABLE, desc = "Both transactions counted")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "A transaction or a part of it got lost")
+    @State
+    public static class SameBucketStriped {
+
+        private final StatisticsWindow window = StressFixtures.window(true);
+        private final StatisticsService statisticsService = new StatisticsServiceBuilder(window).clock(() -> NOW).build();
+
+        @Actor
+        public void first() {
+            statisticsService.persist(NOW, 1.0);
+        }
+
+        @Actor
+        public void second() {
+            statisticsService.persist(NOW, 2.0);
+        }
+
+        @Arbiter
+        public void arbiter(IIII_Result r) {
+            StressFixtures.report(window.aggregate(NOW), r);
+        }
+    }
+
+    @JCStressTest
+    @Description("Pre-aggregated batch merged into the bucket a single transaction is persisted to")
+    @Outcome(id = "4, 10, 1, 4", expect = Expect.ACCEPTABLE, desc = "Batch and transaction counted")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "The batch or the transaction got lost")
+    @State
+    public static class MergeAndPersist {
+
+        private final StatisticsWindow window = StressFixtures.window(false);
+        private final StatisticsService statisticsService = new StatisticsServiceBuilder(window).clock(() -> NOW).build();
+
+        @Actor
+        public void merge() {
+            statisticsService.merge(window.bucketIndexOf(NOW), 3, 6.0, 1.0, 3.0);
+        }
+
+        @Actor
+        public void persist() {
+            statisticsService.persist(NOW, 4.0);
+        }
+
+        @Arbiter
+        public void arbiter(IIII_Result r) {
+            StressFixtures.report(window.aggregate(NOW), r);
+        }
+    }
+}
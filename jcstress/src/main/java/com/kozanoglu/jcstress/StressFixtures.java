@@ -0,0 +1,35 @@
+package com.kozanoglu.jcstress;
+
+import org.openjdk.jcstress.infra.results.IIII_Result;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+
+/**
+ * Window, clock and reporting shared by the stress tests, the engine itself is built with a
+ * {@link com.kozanoglu.service.statistics.StatisticsServiceBuilder} on a clock which stands still at {@link #NOW}.
+ */
+final class StressFixtures {
+
+    static final long WINDOW_MILLIS = 60_000L;
+    static final long BUCKET_MILLIS = 1_000L;
+    // middle of a bucket, so neither the window nor the allowed skew ends on it
+    static final long NOW = 1_500_000_000_500L;
+
+    private StressFixtures() {
+    }
+
+    static StatisticsWindow window(boolean striped) {
+        return new StatisticsWindow(WINDOW_MILLIS, BUCKET_MILLIS, striped, false);
+    }
+
+    /**
+     * Reports count, sum, min and max of the statistics, amounts of the tests are small integers so all are exact.
+     */
+    static void report(StatisticsResult statistics, IIII_Result r) {
+        r.r1 = statistics.getCount();
+        r.r2 = statistics.getSum().intValue();
+        r.r3 = statistics.getMin().intValue();
+        r.r4 = statistics.getMax().intValue();
+    }
+}
@@ -0,0 +1,161 @@
+package com.kozanoglu.client;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.security.IngestHandshake;
+
+/**
+ * Producer side of the raw ingestion listener. Connects and authenticates once, then buffers transactions
+ * and sends them either as a length-prefixed frame over the connection or as a datagram carrying the
+ * session token of the connection. Blocking and not thread safe.
+ */
+public final class RawIngestClient implements Closeable {
+
+    // the largest datagram which still fits into a single udp packet over ipv4
+    static final int MAX_DATAGRAM_RECORDS = (65507 - IngestHandshake.TOKEN_BYTES) / TransactionRecords.RECORD_BYTES;
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final SocketChannel connection;
+    private final DatagramChannel datagrams;
+    private final byte[] token;
+    private final ByteBuffer buffer;
+    private final int maxRecords;
+
+    private RawIngestClient(SocketChannel connection, DatagramChannel datagrams, byte[] token, int maxRecords) {
+        this.connection = connection;
+        this.datagrams = datagrams;
+        this.token = token;
+        this.maxRecords = maxRecords;
+        this.buffer = ByteBuffer.allocateDirect(LENGTH_BYTES + IngestHandshake.TOKEN_BYTES
+                + maxRecords * TransactionRecords.RECORD_BYTES);
+        clear();
+    }
+
+    /**
+     * Connects and authenticates with the shared key.
+     *
+     * @param udp        address of the datagram port, null to send frames only
+     * @param maxRecords records buffered before they are sent as a frame, at most max_frame_bytes of the
+     *                   listener divided by the record size
+     * @throws IOException if the listener isn't reachable or rejects the key
+     */
+    public static RawIngestClient connect(InetSocketAddress tcp, InetSocketAddress udp, byte[] sharedKey, int maxRecords)
+            throws IOException {
+        SocketChannel connection = SocketChannel.open(tcp);
+        try {
+            connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            byte[] nonce = new byte[IngestHandshake.NONCE_BYTES];
+            readFully(connection, ByteBuffer.wrap(nonce));
+            connection.write(ByteBuffer.wrap(IngestHandshake.sign(sharedKey, nonce)));
+
+            ByteBuffer reply = ByteBuffer.allocate(1 + IngestHandshake.TOKEN_BYTES);
+            readFully(connection, reply);
+            if (reply.get(0) != IngestHandshake.ACCEPTED) {
+                throw new IOException("Raw ingestion handshake was rejected");
+            }
+            byte[] token = new byte[IngestHandshake.TOKEN_BYTES];
+            reply.position(1);
+            reply.get(token);
+
+            DatagramChannel datagrams = null;
+            if (udp != null) {
+                datagrams = DatagramChannel.open();
+                datagrams.connect(udp);
+            }
+            return new RawIngestClient(connection, datagrams, token, Math.min(maxRecords, MAX_DATAGRAM_RECORDS));
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Buffers a transaction, a full buffer is sent as a frame.
+     */
+    public void write(long timestamp, double amount) throws IOException {
+        if (buffered() == maxRecords) {
+            flush();
+        }
+        buffer.putLong(timestamp).putDouble(amount);
+    }
+
+    /**
+     * Sends the buffered transactions as a frame over the connection.
+     */
+    public void flush() throws IOException {
+        int records = buffered();
+        if (records == 0) {
+            return;
+        }
+
+        int end = buffer.position();
+        int start = IngestHandshake.TOKEN_BYTES;
+        buffer.putInt(start, records * TransactionRecords.RECORD_BYTES);
+        buffer.limit(end).position(start);
+        while (buffer.hasRemaining()) {
+            connection.write(buffer);
+        }
+        clear();
+    }
+
+    /**
+     * Sends the buffered transactions as a single datagram. Datagrams are cheaper than frames
+     * but may be lost or dropped without notice.
+     */
+    public void flushDatagram() throws IOException {
+        if (datagrams == null) {
+            throw new IllegalStateException("Not connected to a datagram port");
+        }
+
+        if (buffered() == 0) {
+            return;
+        }
+
+        int end = buffer.position();
+        int start = LENGTH_BYTES;
+        buffer.position(start);
+        buffer.put(token);
+        buffer.limit(end).position(start);
+        datagrams.write(buffer);
+        clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            connection.close();
+            if (datagrams != null) {
+                datagrams.close();
+            }
+        }
+    }
+
+    private int buffered() {
+        return (buffer.position() - LENGTH_BYTES - IngestHandshake.TOKEN_BYTES) / TransactionRecords.RECORD_BYTES;
+    }
+
+    // records start after room for either the length of a frame or the token of a datagram right in front of them
+    private void clear() {
+        buffer.clear();
+        buffer.position(LENGTH_BYTES + IngestHandshake.TOKEN_BYTES);
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException("Raw ingestion listener closed the connection during the handshake");
+            }
+        }
+    }
+}
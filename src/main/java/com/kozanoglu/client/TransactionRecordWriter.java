@@ -0,0 +1,65 @@
+package com.kozanoglu.client;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.kozanoglu.model.statistics.TransactionRecords;
+
+/**
+ * Encodes transactions into the {@link TransactionRecords} format for producers, e.g. straight into the body of a
+ * POST to /transactions/batch with the {@link TransactionRecords#CONTENT_TYPE} content type.
+ * Records are buffered and written to the stream in chunks. Not thread safe.
+ */
+public final class TransactionRecordWriter implements Flushable, Closeable {
+
+    private static final int BUFFERED_RECORDS = 512;
+
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_RECORDS * TransactionRecords.RECORD_BYTES);
+
+    public TransactionRecordWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the single record of a transaction, e.g. the body of a POST to /transactions
+     */
+    public static byte[] encode(long timestamp, double amount) {
+        return ByteBuffer.allocate(TransactionRecords.RECORD_BYTES)
+                .putLong(timestamp)
+                .putDouble(amount)
+                .array();
+    }
+
+    public void write(long timestamp, double amount) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.putLong(timestamp).putDouble(amount);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.kozanoglu.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.kozanoglu.controller.metrics.LatencyInterceptor;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+
+@Configuration
+public class MetricsConfig extends WebMvcConfigurerAdapter
+{
+	@Autowired
+	private StatisticsMetrics statisticsMetrics;
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry)
+	{
+		registry.addInterceptor(new LatencyInterceptor(statisticsMetrics));
+	}
+}
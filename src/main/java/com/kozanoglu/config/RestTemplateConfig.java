@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.hateoas.hal.Jackson2HalModule;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
@@ -26,6 +27,9 @@ public class RestTemplateConfig
 	@Value("${external.connection_request_timeout}")
 	private int connectionRequestTimeout;
 
+	@Value("${statistics.cluster.timeout_millis}")
+	private int peerTimeout;
+
 	@Bean(name = "externalAPIRestTemplate")
 	public RestTemplate getRestTemplate()
 	{
@@ -40,6 +44,19 @@ public class RestTemplateConfig
 		return restTemplate;
 	}
 
+	@Bean(name = "peerRestTemplate")
+	public RestTemplate getPeerRestTemplate()
+	{
+		HttpComponentsClientHttpRequestFactory httpRequestFactory = new HttpComponentsClientHttpRequestFactory();
+		httpRequestFactory.setReadTimeout(peerTimeout);
+		httpRequestFactory.setConnectTimeout(peerTimeout);
+		httpRequestFactory.setConnectionRequestTimeout(peerTimeout);
+
+		RestTemplate restTemplate = new RestTemplate(httpRequestFactory);
+		restTemplate.setMessageConverters(Collections.singletonList(new ByteArrayHttpMessageConverter()));
+		return restTemplate;
+	}
+
 	private MappingJackson2HttpMessageConverter createJackson2HttpMessageConverter()
 	{
 		ObjectMapper objectMapper = new ObjectMapper();
@@ -0,0 +1,143 @@
+package com.kozanoglu.config;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.kozanoglu.service.statistics.KeyedStatistics;
+import com.kozanoglu.service.statistics.StatisticsRates;
+import com.kozanoglu.service.statistics.StatisticsRollup;
+import com.kozanoglu.service.statistics.StatisticsSnapshot;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+import com.kozanoglu.service.statistics.TransactionDeduplicator;
+import com.kozanoglu.service.statistics.TransactionJournal;
+import com.kozanoglu.util.CachedClock;
+import com.kozanoglu.util.TimeSource;
+
+@Configuration
+public class StatisticsConfig
+{
+	@Value("${statistics.window_millis}")
+	private long windowMillis;
+
+	@Value("${statistics.bucket_millis}")
+	private long bucketMillis;
+
+	@Value("${statistics.striped}")
+	private boolean striped;
+
+	@Value("${statistics.percentiles}")
+	private boolean percentiles;
+
+	@Value("${statistics.keys.max_live}")
+	private int maxLiveKeys;
+
+	@Value("${statistics.keys.top}")
+	private int topKeys;
+
+	@Value("${statistics.snapshot.enabled}")
+	private boolean snapshot;
+
+	@Value("${statistics.snapshot.allowed_lateness_millis}")
+	private long allowedLatenessMillis;
+
+	@Value("${statistics.rollup.enabled}")
+	private boolean rollup;
+
+	@Value("${statistics.rollup.minutes}")
+	private int rollupMinutes;
+
+	@Value("${statistics.rollup.hours}")
+	private int rollupHours;
+
+	@Value("${statistics.rates.enabled}")
+	private boolean rates;
+
+	@Value("${statistics.clock.cached}")
+	private boolean cachedClock;
+
+	@Value("${statistics.clock.resolution_millis}")
+	private long clockResolutionMillis;
+
+	@Value("${statistics.clock.max_skew_millis}")
+	private long maxSkewMillis;
+
+	@Value("${statistics.dedup.enabled}")
+	private boolean dedup;
+
+	@Value("${statistics.dedup.expected_per_bucket}")
+	private int dedupExpectedPerBucket;
+
+	@Value("${statistics.dedup.false_positive_rate}")
+	private double dedupFalsePositiveRate;
+
+	@Value("${statistics.journal.enabled}")
+	private boolean journal;
+
+	@Value("${statistics.journal.directory}")
+	private String journalDirectory;
+
+	@Value("${statistics.journal.segment_bytes}")
+	private int journalSegmentBytes;
+
+	@Value("${statistics.journal.fsync_millis}")
+	private long journalFsyncMillis;
+
+	@Bean
+	public TimeSource timeSource()
+	{
+		if (!cachedClock)
+		{
+			return TimeSource.SYSTEM;
+		}
+
+		CachedClock clock = new CachedClock(clockResolutionMillis);
+		clock.start();
+		return clock;
+	}
+
+	@Bean
+	public StatisticsWindow statisticsWindow()
+	{
+		return new StatisticsWindow(windowMillis, bucketMillis, striped, percentiles);
+	}
+
+	@Bean
+	public KeyedStatistics keyedStatistics()
+	{
+		return new KeyedStatistics(windowMillis, bucketMillis, maxLiveKeys, topKeys);
+	}
+
+	@Bean
+	public StatisticsSnapshot statisticsSnapshot(StatisticsWindow statisticsWindow)
+	{
+		return new StatisticsSnapshot(statisticsWindow, snapshot, allowedLatenessMillis);
+	}
+
+	@Bean
+	public StatisticsRollup statisticsRollup(StatisticsWindow statisticsWindow)
+	{
+		return new StatisticsRollup(statisticsWindow, rollup, allowedLatenessMillis, rollupMinutes, rollupHours);
+	}
+
+	@Bean
+	public StatisticsRates statisticsRates(StatisticsWindow statisticsWindow)
+	{
+		return new StatisticsRates(statisticsWindow, rates, allowedLatenessMillis);
+	}
+
+	@Bean
+	public TransactionJournal transactionJournal(StatisticsWindow statisticsWindow, TimeSource timeSource)
+	{
+		return new TransactionJournal(statisticsWindow, journal, Paths.get(journalDirectory), journalSegmentBytes, journalFsyncMillis,
+				timeSource);
+	}
+
+	@Bean
+	public TransactionDeduplicator transactionDeduplicator()
+	{
+		return new TransactionDeduplicator(windowMillis, bucketMillis, maxSkewMillis, dedup, dedupExpectedPerBucket, dedupFalsePositiveRate);
+	}
+}
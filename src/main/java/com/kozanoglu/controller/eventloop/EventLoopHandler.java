@@ -0,0 +1,315 @@
+package com.kozanoglu.controller.eventloop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.model.statistics.BatchResult;
+import com.kozanoglu.model.statistics.Transaction;
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.security.AccountCredentials;
+import com.kozanoglu.security.BearerToken;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.ClusterStatisticsService;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.SerializedStatistics;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.TransactionBatchService;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Serves login, transactions and the statistics of the window, with the same statuses and services as the
+ * servlet controllers: transactions go through the {@link IngestPipeline}, statistics are served with the ETag of
+ * the {@link SerializedStatistics} and merged over the cluster in aggregator mode.
+ * <p>
+ * Requests are handled on the event loop thread which read them as long as they don't block. Parsing a batch,
+ * waiting for the pipeline to apply a transaction and fetching the statistics of the peers are handed off to
+ * a separate executor group, so they never hold up the other connections of the event loop.
+ */
+@ChannelHandler.Sharable
+class EventLoopHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final Log LOGGER = LogFactory.getLog(EventLoopHandler.class);
+
+    private final StatisticsService statisticsService;
+    private final IngestPipeline ingestPipeline;
+    private final TransactionBatchService transactionBatchService;
+    private final ClusterStatisticsService clusterStatisticsService;
+    private final SerializedStatistics serializedStatistics;
+    private final StatisticsMetrics statisticsMetrics;
+    private final AuthenticationManager authenticationManager;
+    private final ObjectMapper objectMapper;
+    private final EventExecutorGroup blockingExecutors;
+    private final String retryAfterSeconds;
+
+    /**
+     * @param blockingExecutors executors for the requests which may block
+     * @param retryAfterSeconds value of the Retry-After header of a transaction rejected by a full pipeline
+     */
+    EventLoopHandler(StatisticsService statisticsService, IngestPipeline ingestPipeline,
+                     TransactionBatchService transactionBatchService, ClusterStatisticsService clusterStatisticsService,
+                     SerializedStatistics serializedStatistics, StatisticsMetrics statisticsMetrics,
+                     AuthenticationManager authenticationManager, ObjectMapper objectMapper,
+                     EventExecutorGroup blockingExecutors, String retryAfterSeconds) {
+        this.statisticsService = statisticsService;
+        this.ingestPipeline = ingestPipeline;
+        this.transactionBatchService = transactionBatchService;
+        this.clusterStatisticsService = clusterStatisticsService;
+        this.serializedStatistics = serializedStatistics;
+        this.statisticsMetrics = statisticsMetrics;
+        this.authenticationManager = authenticationManager;
+        this.objectMapper = objectMapper;
+        this.blockingExecutors = blockingExecutors;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+        if (!request.decoderResult().isSuccess()) {
+            respond(ctx, request, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        String path = new QueryStringDecoder(request.uri()).path();
+        HttpMethod method = request.method();
+
+        if ("/login".equals(path)) {
+            if (method == HttpMethod.POST) {
+                login(ctx, request);
+            } else {
+                respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            return;
+        }
+
+        // same as the servlet stack, which answers anonymous requests with 403
+        if (BearerToken.subjectOf(request.headers().get(BearerToken.HEADER)) == null) {
+            respond(ctx, request, HttpResponseStatus.FORBIDDEN);
+            return;
+        }
+
+        switch (path) {
+            case "/transactions":
+                if (method == HttpMethod.POST && isRecords(request)) {
+                    handle(ctx, request, this::persistTransactionRecord, ingestPipeline.isWaiting());
+                } else if (method == HttpMethod.POST) {
+                    handle(ctx, request, this::persistTransaction, ingestPipeline.isWaiting());
+                } else {
+                    respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+                }
+                break;
+            case "/transactions/batch":
+                if (method == HttpMethod.POST) {
+                    handle(ctx, request, this::persistBatch, true);
+                } else {
+                    respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+                }
+                break;
+            case "/statistics":
+            case "/statistics/":
+                if (method == HttpMethod.GET) {
+                    handle(ctx, request, this::getStatistics, clusterStatisticsService.isAggregator());
+                } else {
+                    respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+                }
+                break;
+            default:
+                respond(ctx, request, HttpResponseStatus.NOT_FOUND);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LOGGER.warn("Closing event loop connection", cause);
+        ctx.close();
+    }
+
+    /**
+     * Handles the request right away or, if it may block, on the blocking executors. The request is retained
+     * for as long as it is handed off, the response is written back through the event loop of its channel.
+     */
+    private void handle(ChannelHandlerContext ctx, FullHttpRequest request, RequestHandler handler, boolean blocking)
+            throws Exception {
+        if (!blocking) {
+            handler.handle(ctx, request);
+            return;
+        }
+
+        request.retain();
+        blockingExecutors.execute(() -> {
+            try {
+                handler.handle(ctx, request);
+            } catch (Exception e) {
+                exceptionCaught(ctx, e);
+            } finally {
+                request.release();
+            }
+        });
+    }
+
+    private void login(ChannelHandlerContext ctx, FullHttpRequest request) throws IOException {
+        Authentication authentication;
+        try {
+            AccountCredentials credentials = objectMapper.readValue(body(request), AccountCredentials.class);
+            authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(
+                    credentials.getUsername(), credentials.getPassword(), Collections.emptyList()));
+        } catch (JsonProcessingException | AuthenticationException e) {
+            respond(ctx, request, HttpResponseStatus.UNAUTHORIZED);
+            return;
+        }
+
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(BearerToken.HEADER, BearerToken.create(authentication.getName()));
+        send(ctx, request, response);
+    }
+
+    private void persistTransaction(ChannelHandlerContext ctx, FullHttpRequest request) throws IOException {
+        Transaction transaction;
+        try {
+            transaction = objectMapper.readValue(body(request), Transaction.class);
+        } catch (JsonProcessingException e) {
+            respond(ctx, request, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        if (transaction == null || transaction.getAmount() == null || transaction.getTimestamp() == null) {
+            statisticsMetrics.recordInvalid(1);
+            respond(ctx, request, HttpResponseStatus.valueOf(418));
+            return;
+        }
+
+        respond(ctx, request, ingestPipeline.persist(transaction.getId(), transaction.getKey(),
+                transaction.getTimestamp(), transaction.getAmount()));
+    }
+
+    private void persistBatch(ChannelHandlerContext ctx, FullHttpRequest request) throws IOException {
+        BatchResult result = isRecords(request)
+                ? transactionBatchService.persistRecords(body(request))
+                : transactionBatchService.persistTransactions(body(request));
+        statisticsMetrics.recordBatch(result);
+        respondJson(ctx, request, result);
+    }
+
+    /**
+     * Same as the servlet controller: the statistics of the cluster in aggregator mode, served pre-serialized with
+     * their ETag, a request whose If-None-Match matches it is answered with 304 and no body.
+     */
+    private void getStatistics(ChannelHandlerContext ctx, FullHttpRequest request) throws JsonProcessingException {
+        SerializedStatistics.Version version = serializedStatistics.of(clusterStatisticsService.isAggregator()
+                ? clusterStatisticsService.getStatisticsForTheLastMinute()
+                : statisticsService.getStatisticsForTheLastMinute());
+
+        FullHttpResponse response = version.getEtag().equals(request.headers().get(HttpHeaderNames.IF_NONE_MATCH))
+                ? new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED)
+                : new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(version.getBody()));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        response.headers().set(HttpHeaderNames.ETAG, version.getEtag());
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=" + serializedStatistics.getMaxAgeSeconds() + ", private");
+        send(ctx, request, response);
+    }
+
+    private void persistTransactionRecord(ChannelHandlerContext ctx, FullHttpRequest request) {
+        ByteBuf content = request.content();
+        int start = content.readerIndex();
+        if (content.readableBytes() != TransactionRecords.RECORD_BYTES
+                || !Double.isFinite(content.getDouble(start + TransactionRecords.AMOUNT_OFFSET))) {
+            statisticsMetrics.recordInvalid(1);
+            respond(ctx, request, HttpResponseStatus.valueOf(418));
+            return;
+        }
+
+        respond(ctx, request, ingestPipeline.persist(null, content.getLong(start + TransactionRecords.TIMESTAMP_OFFSET),
+                content.getDouble(start + TransactionRecords.AMOUNT_OFFSET)));
+    }
+
+    private void respond(ChannelHandlerContext ctx, FullHttpRequest request, IngestOutcome outcome) {
+        statisticsMetrics.recordIngest(outcome);
+        switch (outcome) {
+            case STALE:
+                respond(ctx, request, HttpResponseStatus.NO_CONTENT);
+                break;
+            case TOO_EARLY:
+                respond(ctx, request, HttpResponseStatus.UNPROCESSABLE_ENTITY);
+                break;
+            case DUPLICATE:
+                respond(ctx, request, HttpResponseStatus.CONFLICT);
+                break;
+            case QUEUED:
+                respond(ctx, request, HttpResponseStatus.ACCEPTED);
+                break;
+            case REJECTED:
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                        HttpResponseStatus.SERVICE_UNAVAILABLE);
+                response.headers().set(HttpHeaderNames.RETRY_AFTER, retryAfterSeconds);
+                send(ctx, request, response);
+                break;
+            default:
+                respond(ctx, request, HttpResponseStatus.CREATED);
+        }
+    }
+
+    private void respondJson(ChannelHandlerContext ctx, FullHttpRequest request, Object body) throws JsonProcessingException {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(body)));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        send(ctx, request, response);
+    }
+
+    private static boolean isRecords(FullHttpRequest request) {
+        String contentType = request.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        return contentType != null && contentType.startsWith(TransactionRecords.CONTENT_TYPE);
+    }
+
+    private static InputStream body(FullHttpRequest request) {
+        return new ByteBufInputStream(request.content());
+    }
+
+    private static void respond(ChannelHandlerContext ctx, FullHttpRequest request, HttpResponseStatus status) {
+        send(ctx, request, new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status));
+    }
+
+    private static void send(ChannelHandlerContext ctx, FullHttpRequest request, FullHttpResponse response) {
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+        if (HttpUtil.isKeepAlive(request)) {
+            HttpUtil.setKeepAlive(response, true);
+            ctx.writeAndFlush(response);
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RequestHandler {
+
+        void handle(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception;
+    }
+}
@@ -0,0 +1,130 @@
+package com.kozanoglu.controller.eventloop;
+
+import java.net.InetSocketAddress;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.ClusterStatisticsService;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.SerializedStatistics;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.TransactionBatchService;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Non-blocking HTTP server on a Netty event loop, next to the servlet container on a port of its own,
+ * so both can be benchmarked against the same {@link StatisticsService} side by side.
+ * Run with spring.main.web-environment=false to serve from the event loop only.
+ */
+@Component
+public class EventLoopServer {
+
+    private static final Log LOGGER = LogFactory.getLog(EventLoopServer.class);
+
+    private final EventExecutorGroup blockingExecutors;
+    private final EventLoopHandler handler;
+    private final boolean enabled;
+    private final int port;
+    private final int threads;
+    private final int maxContentBytes;
+
+    private EventLoopGroup acceptors;
+    private EventLoopGroup workers;
+    private Channel channel;
+
+    /**
+     * @param blockingThreads threads for batches and the requests waiting for the pipeline or the peers,
+     *                        0 for one per core
+     */
+    @Autowired
+    public EventLoopServer(StatisticsService statisticsService, IngestPipeline ingestPipeline,
+                           TransactionBatchService transactionBatchService,
+                           ClusterStatisticsService clusterStatisticsService, SerializedStatistics serializedStatistics,
+                           StatisticsMetrics statisticsMetrics, AuthenticationManager authenticationManager,
+                           ObjectMapper objectMapper,
+                           @Value("${event_loop.enabled}") boolean enabled,
+                           @Value("${event_loop.port}") int port,
+                           @Value("${event_loop.threads}") int threads,
+                           @Value("${event_loop.blocking_threads}") int blockingThreads,
+                           @Value("${event_loop.max_content_bytes}") int maxContentBytes,
+                           @Value("${statistics.pipeline.retry_after_seconds}") String retryAfterSeconds) {
+        // threads of the group are only started once a task is handed to them
+        this.blockingExecutors = new DefaultEventExecutorGroup(
+                blockingThreads > 0 ? blockingThreads : Runtime.getRuntime().availableProcessors());
+        this.handler = new EventLoopHandler(statisticsService, ingestPipeline, transactionBatchService,
+                clusterStatisticsService, serializedStatistics, statisticsMetrics, authenticationManager, objectMapper,
+                blockingExecutors, retryAfterSeconds);
+        this.enabled = enabled;
+        this.port = port;
+        this.threads = threads;
+        this.maxContentBytes = maxContentBytes;
+    }
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        acceptors = new NioEventLoopGroup(1);
+        // 0 leaves the number of event loops to netty, twice the cores
+        workers = new NioEventLoopGroup(threads);
+        channel = new ServerBootstrap()
+                .group(acceptors, workers)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(maxContentBytes))
+                                .addLast(handler);
+                    }
+                })
+                .bind(port)
+                .sync()
+                .channel();
+        LOGGER.info("Event loop server started on " + channel.localAddress());
+    }
+
+    /**
+     * @return the bound port, e.g. when started on port 0, -1 if not started
+     */
+    public int getPort() {
+        return channel == null ? -1 : ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+            acceptors.shutdownGracefully();
+            workers.shutdownGracefully();
+        }
+        blockingExecutors.shutdownGracefully();
+    }
+}
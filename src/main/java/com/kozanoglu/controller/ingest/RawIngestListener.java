@@ -0,0 +1,376 @@
+package com.kozanoglu.controller.ingest;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.security.IngestHandshake;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.TransactionBatchService;
+
+/**
+ * Binary ingestion for internal producers over plain TCP and UDP, outside of HTTP and the security filter chain.
+ * A TCP connection authenticates once with the {@link IngestHandshake}, then streams frames of an int32 big-endian
+ * length followed by that many bytes of {@link TransactionRecords}. A UDP datagram is the session token of an
+ * open connection followed by records, sent from the address of that connection. Frames and datagrams are decoded
+ * straight from direct buffers.
+ * <p>
+ * A single selector thread serves all connections and datagrams. Nothing is acknowledged: a frame which breaks
+ * the protocol closes its connection, a datagram with an unknown token or from another address is dropped.
+ * Until the handshake succeeds a connection only holds a buffer for the answer to its nonce, connections beyond
+ * the cap are closed right away and connections which don't answer in time are closed.
+ */
+@Component
+public class RawIngestListener {
+
+    public static final int LENGTH_BYTES = 4;
+
+    private static final Log LOGGER = LogFactory.getLog(RawIngestListener.class);
+
+    private static final int MAX_DATAGRAM_BYTES = 65536;
+    private static final long SWEEP_MILLIS = 100;
+
+    private final TransactionBatchService transactionBatchService;
+    private final StatisticsMetrics statisticsMetrics;
+    private final boolean enabled;
+    private final int tcpPort;
+    private final int udpPort;
+    private final byte[] sharedKey;
+    private final int maxFrameBytes;
+    private final int maxConnections;
+    private final long handshakeTimeoutNanos;
+
+    // only touched by the selector thread
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+    // session tokens and the address of the connection they were handed out to
+    private final Map<ByteBuffer, InetAddress> sessions = new HashMap<>();
+    private int connections;
+    private long lastSweep;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private DatagramChannel datagrams;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param sharedKey              key of the handshake, has to be set when enabled
+     * @param maxFrameBytes          largest frame a connection may send, a connection holds a direct buffer of this size
+     * @param maxConnections         most connections open at the same time, authenticated or not
+     * @param handshakeTimeoutMillis how long a connection may take to answer its nonce
+     */
+    @Autowired
+    public RawIngestListener(TransactionBatchService transactionBatchService, StatisticsMetrics statisticsMetrics,
+                             @Value("${raw_ingest.enabled}") boolean enabled,
+                             @Value("${raw_ingest.tcp_port}") int tcpPort,
+                             @Value("${raw_ingest.udp_port}") int udpPort,
+                             @Value("${raw_ingest.shared_key}") String sharedKey,
+                             @Value("${raw_ingest.max_frame_bytes}") int maxFrameBytes,
+                             @Value("${raw_ingest.max_connections}") int maxConnections,
+                             @Value("${raw_ingest.handshake_timeout_millis}") long handshakeTimeoutMillis) {
+        this.transactionBatchService = transactionBatchService;
+        this.statisticsMetrics = statisticsMetrics;
+        this.enabled = enabled;
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+        this.sharedKey = sharedKey.getBytes(StandardCharsets.UTF_8);
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxConnections = maxConnections;
+        this.handshakeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(handshakeTimeoutMillis);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        if (sharedKey.length == 0) {
+            throw new IllegalStateException("raw_ingest.shared_key has to be set to enable the raw ingestion listener");
+        }
+
+        if (maxFrameBytes <= 0 || maxFrameBytes % TransactionRecords.RECORD_BYTES != 0) {
+            throw new IllegalStateException(String.format(
+                    "raw_ingest.max_frame_bytes of [%d] isn't a multiple of [%d]", maxFrameBytes, TransactionRecords.RECORD_BYTES));
+        }
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(tcpPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        datagrams = DatagramChannel.open();
+        datagrams.bind(new InetSocketAddress(udpPort));
+        datagrams.configureBlocking(false);
+        datagrams.register(selector, SelectionKey.OP_READ);
+
+        running = true;
+        thread = new Thread(this::run, "raw-ingest");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Raw ingestion listening on tcp " + server.getLocalAddress() + " and udp " + datagrams.getLocalAddress());
+    }
+
+    /**
+     * @return the bound tcp port, e.g. when started on port 0, -1 if not started
+     */
+    public int getTcpPort() throws IOException {
+        return server == null ? -1 : ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return the bound udp port, e.g. when started on port 0, -1 if not started
+     */
+    public int getUdpPort() throws IOException {
+        return datagrams == null ? -1 : ((InetSocketAddress) datagrams.getLocalAddress()).getPort();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        thread.join(1000);
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(SWEEP_MILLIS);
+            } catch (IOException e) {
+                LOGGER.error("Raw ingestion selector failed", e);
+                return;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == datagrams) {
+                        receive();
+                    } else {
+                        read(key);
+                    }
+                } catch (IOException e) {
+                    // the listening channels stay open, only a broken connection is closed
+                    if (key.attachment() instanceof Connection) {
+                        LOGGER.debug("Closing raw ingestion connection", e);
+                        close(key);
+                    } else {
+                        LOGGER.warn("Raw ingestion failed to accept or receive", e);
+                    }
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS)) {
+                closeExpiredHandshakes(now);
+                lastSweep = now;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+
+        if (connections >= maxConnections) {
+            LOGGER.warn("Refusing raw ingestion connection from " + channel.getRemoteAddress()
+                    + ", " + connections + " connections are open");
+            channel.close();
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(System.nanoTime() + handshakeTimeoutNanos);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections++;
+        if (!writeFully(channel, ByteBuffer.wrap(connection.nonce))) {
+            close(key);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (channel.read(connection.in) == -1) {
+            close(key);
+            return;
+        }
+
+        if (connection.token == null) {
+            if (!connection.in.hasRemaining() && !handshake(channel, connection)) {
+                close(key);
+            }
+            return;
+        }
+
+        ByteBuffer in = connection.in;
+        in.flip();
+        try {
+            while (in.remaining() >= LENGTH_BYTES) {
+                int start = in.position();
+                int length = in.getInt(start);
+                if (length < 0 || length > maxFrameBytes || length % TransactionRecords.RECORD_BYTES != 0) {
+                    LOGGER.warn("Closing raw ingestion connection after a frame of " + length + " bytes");
+                    close(key);
+                    return;
+                }
+
+                if (in.remaining() < LENGTH_BYTES + length) {
+                    break;
+                }
+
+                int limit = in.limit();
+                in.position(start + LENGTH_BYTES).limit(start + LENGTH_BYTES + length);
+                statisticsMetrics.recordBatch(transactionBatchService.persistRecords(in));
+                in.limit(limit).position(start + LENGTH_BYTES + length);
+            }
+        } finally {
+            if (key.isValid()) {
+                in.compact();
+            }
+        }
+    }
+
+    /**
+     * Checks the answer to the nonce, which has to be read in full, and hands out the session token.
+     * Only then the connection gets a buffer for frames.
+     *
+     * @return false if the answer is wrong
+     */
+    private boolean handshake(SocketChannel channel, Connection connection) throws IOException {
+        byte[] answer = connection.in.array();
+        if (!IngestHandshake.verify(sharedKey, connection.nonce, answer)) {
+            LOGGER.warn("Raw ingestion handshake from " + channel.getRemoteAddress() + " failed");
+            return false;
+        }
+
+        byte[] token = IngestHandshake.randomBytes(IngestHandshake.TOKEN_BYTES);
+        ByteBuffer reply = ByteBuffer.allocate(1 + IngestHandshake.TOKEN_BYTES);
+        reply.put(IngestHandshake.ACCEPTED).put(token).flip();
+        if (!writeFully(channel, reply)) {
+            return false;
+        }
+
+        connection.token = ByteBuffer.wrap(token);
+        connection.in = ByteBuffer.allocateDirect(LENGTH_BYTES + maxFrameBytes);
+        sessions.put(connection.token, ((InetSocketAddress) channel.getRemoteAddress()).getAddress());
+        return true;
+    }
+
+    private void receive() throws IOException {
+        while (true) {
+            datagram.clear();
+            SocketAddress source = datagrams.receive(datagram);
+            if (source == null) {
+                return;
+            }
+
+            datagram.flip();
+            if (datagram.remaining() < IngestHandshake.TOKEN_BYTES) {
+                continue;
+            }
+
+            // looked up by the token bytes in place, without copying them out of the buffer
+            int limit = datagram.limit();
+            datagram.limit(IngestHandshake.TOKEN_BYTES);
+            InetAddress owner = sessions.get(datagram);
+            boolean authenticated = owner != null && owner.equals(((InetSocketAddress) source).getAddress());
+            datagram.limit(limit);
+            if (authenticated) {
+                datagram.position(IngestHandshake.TOKEN_BYTES);
+                statisticsMetrics.recordBatch(transactionBatchService.persistRecords(datagram));
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        Object attachment = key.attachment();
+        if (attachment instanceof Connection) {
+            connections--;
+            if (((Connection) attachment).token != null) {
+                sessions.remove(((Connection) attachment).token);
+            }
+        }
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.debug("Couldn't close raw ingestion connection", e);
+        }
+    }
+
+    private void closeExpiredHandshakes(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (key.isValid() && attachment instanceof Connection && ((Connection) attachment).token == null
+                    && now - ((Connection) attachment).deadline > 0) {
+                LOGGER.debug("Closing raw ingestion connection which didn't answer its nonce in time");
+                close(key);
+            }
+        }
+    }
+
+    // replies are a few bytes on a fresh connection, they fit into the socket buffer right away
+    private static boolean writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        channel.write(buffer);
+        return !buffer.hasRemaining();
+    }
+
+    private static final class Connection {
+
+        private final byte[] nonce = IngestHandshake.randomBytes(IngestHandshake.NONCE_BYTES);
+        // System.nanoTime() by which the nonce has to be answered
+        private final long deadline;
+        // the answer to the nonce until authenticated, frames afterwards
+        private ByteBuffer in = ByteBuffer.allocate(IngestHandshake.MAC_BYTES);
+        private ByteBuffer token;
+
+        private Connection(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.kozanoglu.controller.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+
+/**
+ * Times every request handled by a controller method and counts its response status.
+ * Requests which go asynchronous, e.g. event streams, are left out.
+ */
+public class LatencyInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String START_ATTRIBUTE = LatencyInterceptor.class.getName() + ".start";
+
+    private final StatisticsMetrics metrics;
+
+    public LatencyInterceptor(StatisticsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start instanceof Long && handler instanceof HandlerMethod) {
+            metrics.forHandler(((HandlerMethod) handler).getMethod())
+                    .record(response.getStatus(), System.nanoTime() - (Long) start);
+        }
+    }
+}
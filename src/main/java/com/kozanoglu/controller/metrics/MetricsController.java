@@ -0,0 +1,25 @@
+package com.kozanoglu.controller.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Autowired
+    private StatisticsMetrics statisticsMetrics;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public ResponseEntity<String> scrape() {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, StatisticsMetrics.CONTENT_TYPE)
+                .body(statisticsMetrics.scrape());
+    }
+}
@@ -1,14 +1,35 @@
 package com.kozanoglu.controller.statistics;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.kozanoglu.model.statistics.KeyedStatisticsResult;
+import com.kozanoglu.model.statistics.RatesResult;
+import com.kozanoglu.model.statistics.StatisticPerSecond;
 import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.service.statistics.ClusterStatisticsService;
+import com.kozanoglu.service.statistics.SerializedStatistics;
+import com.kozanoglu.service.statistics.StatisticsRates;
+import com.kozanoglu.service.statistics.StatisticsRollup;
 import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsStreamService;
+import com.kozanoglu.util.TimeUtil;
 
 @RestController
 @RequestMapping("/statistics/")
@@ -17,10 +38,118 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
 
+    @Autowired
+    private StatisticsStreamService statisticsStreamService;
+
+    @Autowired
+    private ClusterStatisticsService clusterStatisticsService;
+
+    @Autowired
+    private StatisticsRollup statisticsRollup;
+
+    @Autowired
+    private StatisticsRates statisticsRates;
+
+    @Autowired
+    private SerializedStatistics serializedStatistics;
+
+    /**
+     * Serves the statistics pre-serialized per version of the window. Spring answers a request whose
+     * If-None-Match matches the ETag with 304 and no body. The statistics need a token, so only the client
+     * itself may keep them for a tick, shared caches must not store them.
+     */
     @RequestMapping(method = RequestMethod.GET)
-    @ResponseStatus(HttpStatus.OK)
-    public StatisticsResult getStatistics() {
+    public ResponseEntity<byte[]> getSerializedStatistics() throws JsonProcessingException {
+        SerializedStatistics.Version version = serializedStatistics.of(getStatistics());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(version.getEtag())
+                .cacheControl(CacheControl.maxAge(serializedStatistics.getMaxAgeSeconds(), TimeUnit.SECONDS).cachePrivate())
+                .body(version.getBody());
+    }
+
+    private StatisticsResult getStatistics() {
 
+        if (clusterStatisticsService.isAggregator()) {
+            return clusterStatisticsService.getStatisticsForTheLastMinute();
+        }
         return statisticsService.getStatisticsForTheLastMinute();
     }
+
+    /**
+     * Percentiles come from the histograms of this node, which peers don't export, so an aggregator answers 400.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "percentiles")
+    public ResponseEntity<StatisticsResult> getStatistics(@RequestParam("percentiles") double[] percentiles) {
+        if (clusterStatisticsService.isAggregator()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(statisticsService.getStatisticsForTheLastMinute(percentiles));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET, params = "window")
+    public ResponseEntity<Map<String, StatisticsResult>> getStatisticsForWindows(@RequestParam("window") String[] windows) {
+        Map<String, StatisticsResult> statistics = new LinkedHashMap<>();
+        try {
+            for (String window : windows) {
+                long windowMillis = TimeUtil.parseDurationMillis(window);
+                statistics.put(window, clusterStatisticsService.isAggregator()
+                        ? clusterStatisticsService.getStatisticsForWindow(windowMillis)
+                        : statisticsService.getStatisticsForWindow(windowMillis));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(statistics);
+    }
+
+    @RequestMapping(value = "top", method = RequestMethod.GET)
+    @ResponseStatus(HttpStatus.OK)
+    public List<KeyedStatisticsResult> getTopKeysBySum(@RequestParam(value = "limit", defaultValue = "10") int limit) {
+
+        return statisticsService.getTopKeysBySum(Math.max(1, limit));
+    }
+
+    @RequestMapping(value = "range", method = RequestMethod.GET)
+    public ResponseEntity<List<StatisticPerSecond>> getStatisticsForRange(@RequestParam("from") long from,
+                                                                          @RequestParam("to") long to,
+                                                                          @RequestParam(value = "step", defaultValue = "60000") long step) {
+        try {
+            return ResponseEntity.ok(statisticsRollup.range(from, to, step));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "rates", method = RequestMethod.GET)
+    public ResponseEntity<RatesResult> getRates() {
+        try {
+            return ResponseEntity.ok(statisticsRates.get());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "buckets", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public byte[] exportBuckets() {
+
+        return statisticsService.exportBuckets();
+    }
+
+    @RequestMapping(value = "stream", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatistics() {
+
+        return statisticsStreamService.subscribe();
+    }
+
+    @RequestMapping(value = "keys/{key:.+}", method = RequestMethod.GET)
+    public ResponseEntity<StatisticsResult> getStatisticsForKey(@PathVariable("key") String key) {
+        StatisticsResult statistics = statisticsService.getStatisticsForKey(key);
+        return statistics == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(statistics);
+    }
 }
@@ -1,40 +1,113 @@
 package com.kozanoglu.controller.statistics;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.kozanoglu.model.statistics.BatchResult;
 import com.kozanoglu.model.statistics.Transaction;
-import com.kozanoglu.service.statistics.StatisticsService;
-
-import static com.kozanoglu.util.TimeUtil.isWithinLastMinute;
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.TransactionBatchService;
 
 @RestController
 @RequestMapping(value = "/transactions")
 public class TransactionsController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private TransactionBatchService transactionBatchService;
+
+    @Autowired
+    private IngestPipeline ingestPipeline;
+
     @Autowired
-    private StatisticsService statisticsService;
+    private StatisticsMetrics statisticsMetrics;
+
+    @Value("${statistics.pipeline.retry_after_seconds}")
+    private String retryAfterSeconds;
 
     @RequestMapping(method = RequestMethod.POST, headers = {
             "content-type=application/json"})
     public ResponseEntity<Transaction> persistTransaction(@RequestBody final Transaction transaction) {
         if (transaction == null || transaction.getAmount() == null || transaction.getTimestamp() == null) {
+            statisticsMetrics.recordInvalid(1);
             return ResponseEntity.status(HttpStatus.I_AM_A_TEAPOT).build();
         }
 
-        if (!isWithinLastMinute(transaction.getTimestamp())) {
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        return respond(ingestPipeline.persist(transaction.getId(), transaction.getKey(), transaction.getTimestamp(),
+                transaction.getAmount()));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, consumes = TransactionRecords.CONTENT_TYPE)
+    public ResponseEntity<Transaction> persistTransactionRecord(final InputStream body) throws IOException {
+        // one more byte than a record to tell a single record from a longer body
+        byte[] record = new byte[TransactionRecords.RECORD_BYTES + 1];
+        int length = 0;
+        int read;
+        while (length < record.length && (read = body.read(record, length, record.length - length)) != -1) {
+            length += read;
         }
 
-        statisticsService.persistTransaction(transaction);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        double amount = buffer.getDouble(TransactionRecords.AMOUNT_OFFSET);
+        if (length != TransactionRecords.RECORD_BYTES || !Double.isFinite(amount)) {
+            statisticsMetrics.recordInvalid(1);
+            return ResponseEntity.status(HttpStatus.I_AM_A_TEAPOT).build();
+        }
+
+        return respond(ingestPipeline.persist(null, buffer.getLong(TransactionRecords.TIMESTAMP_OFFSET), amount));
+    }
+
+    @RequestMapping(value = "/batch", method = RequestMethod.POST, consumes = {
+            MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchResult> persistTransactions(final InputStream body) throws IOException {
+        return respond(transactionBatchService.persistTransactions(body));
+    }
+
+    @RequestMapping(value = "/batch", method = RequestMethod.POST, consumes = TransactionRecords.CONTENT_TYPE)
+    public ResponseEntity<BatchResult> persistTransactionRecords(final InputStream body) throws IOException {
+        return respond(transactionBatchService.persistRecords(body));
+    }
+
+    private ResponseEntity<Transaction> respond(IngestOutcome outcome) {
+        statisticsMetrics.recordIngest(outcome);
+        switch (outcome) {
+            case STALE:
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+            case TOO_EARLY:
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+            case DUPLICATE:
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            case QUEUED:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+            case REJECTED:
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                        .build();
+            default:
+                return ResponseEntity.status(HttpStatus.CREATED).build();
+        }
+    }
+
+    private ResponseEntity<BatchResult> respond(BatchResult result) {
+        statisticsMetrics.recordBatch(result);
+        return ResponseEntity.ok(result);
     }
 
     public static void main(String[] args) {
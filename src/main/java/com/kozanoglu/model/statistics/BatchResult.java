@@ -0,0 +1,50 @@
+package com.kozanoglu.model.statistics;
+
+public class BatchResult {
+
+    private int accepted;
+    private int stale;
+    private int invalid;
+    private int tooEarly;
+    private int duplicate;
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+
+    public int getStale() {
+        return stale;
+    }
+
+    public void setStale(int stale) {
+        this.stale = stale;
+    }
+
+    public int getInvalid() {
+        return invalid;
+    }
+
+    public void setInvalid(int invalid) {
+        this.invalid = invalid;
+    }
+
+    public int getTooEarly() {
+        return tooEarly;
+    }
+
+    public void setTooEarly(int tooEarly) {
+        this.tooEarly = tooEarly;
+    }
+
+    public int getDuplicate() {
+        return duplicate;
+    }
+
+    public void setDuplicate(int duplicate) {
+        this.duplicate = duplicate;
+    }
+}
@@ -0,0 +1,14 @@
+package com.kozanoglu.model.statistics;
+
+public class KeyedStatisticsResult extends StatisticsResult {
+
+    private String key;
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+}
@@ -0,0 +1,60 @@
+package com.kozanoglu.model.statistics;
+
+/**
+ * A rate per second, as measured over the last tick and as exponentially weighted moving averages.
+ */
+public class RateResult {
+
+    private double instant;
+    private double m1;
+    private double m5;
+    private double m15;
+
+    public RateResult() {
+    }
+
+    public RateResult(double instant, double m1, double m5, double m15) {
+        this.instant = instant;
+        this.m1 = m1;
+        this.m5 = m5;
+        this.m15 = m15;
+    }
+
+    /**
+     * @return rate over the buckets sealed since the previous tick
+     */
+    public double getInstant() {
+        return instant;
+    }
+
+    public void setInstant(double instant) {
+        this.instant = instant;
+    }
+
+    /**
+     * @return moving average over one minute
+     */
+    public double getM1() {
+        return m1;
+    }
+
+    public void setM1(double m1) {
+        this.m1 = m1;
+    }
+
+    public double getM5() {
+        return m5;
+    }
+
+    public void setM5(double m5) {
+        this.m5 = m5;
+    }
+
+    public double getM15() {
+        return m15;
+    }
+
+    public void setM15(double m15) {
+        this.m15 = m15;
+    }
+}
@@ -0,0 +1,41 @@
+package com.kozanoglu.model.statistics;
+
+public class RatesResult {
+
+    private long timestamp;
+    private RateResult transactions;
+    private RateResult amount;
+
+    /**
+     * @return epoch millis the rates are measured up to, the end of the last sealed bucket
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return transactions per second
+     */
+    public RateResult getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(RateResult transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * @return sum of the amounts per second
+     */
+    public RateResult getAmount() {
+        return amount;
+    }
+
+    public void setAmount(RateResult amount) {
+        this.amount = amount;
+    }
+}
@@ -1,5 +1,9 @@
 package com.kozanoglu.model.statistics;
 
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class StatisticsResult {
 
     private Double avg;
@@ -7,6 +11,8 @@ public class StatisticsResult {
     private Double min;
     private Integer count;
     private Double sum;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Double> percentiles;
 
     public Double getAvg() {
         return avg;
@@ -47,4 +53,12 @@ public class StatisticsResult {
     public void setSum(Double sum) {
         this.sum = sum;
     }
+
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<String, Double> percentiles) {
+        this.percentiles = percentiles;
+    }
 }
@@ -4,6 +4,8 @@ public class Transaction {
 
     private Double amount;
     private Long timestamp;
+    private String key;
+    private String id;
 
     public Transaction() {
     }
@@ -13,6 +15,12 @@ public class Transaction {
         this.timestamp = timestamp;
     }
 
+    public Transaction(Double amount, Long timestamp, String key) {
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.key = key;
+    }
+
     public Double getAmount() {
         return amount;
     }
@@ -28,4 +36,26 @@ public class Transaction {
     public void setTimestamp(Long timestamp) {
         this.timestamp = timestamp;
     }
+
+    /**
+     * Optional dimension such as merchant, currency or channel, statistics are kept per key as well.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Optional id set by the producer, a transaction sent again with the same id and timestamp is counted once.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
 }
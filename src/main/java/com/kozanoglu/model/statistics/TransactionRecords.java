@@ -0,0 +1,17 @@
+package com.kozanoglu.model.statistics;
+
+/**
+ * Compact binary format of transactions: a body of fixed 16 byte big-endian records, each the epoch millis
+ * timestamp as a signed 64 bit integer followed by the amount as an IEEE 754 double. No framing, no keys,
+ * the number of records is the length of the body divided by the record size.
+ */
+public final class TransactionRecords {
+
+    public static final String CONTENT_TYPE = "application/x-transaction-records";
+    public static final int RECORD_BYTES = 16;
+    public static final int TIMESTAMP_OFFSET = 0;
+    public static final int AMOUNT_OFFSET = 8;
+
+    private TransactionRecords() {
+    }
+}
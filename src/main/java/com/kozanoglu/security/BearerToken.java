@@ -0,0 +1,43 @@
+package com.kozanoglu.security;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+
+/**
+ * Tokens handed out on login for transports outside of the servlet filter chain, e.g. the event loop server,
+ * and sent along with calls between nodes of the cluster.
+ */
+public final class BearerToken {
+
+    public static final String HEADER = TokenAuthenticationService.HEADER_STRING;
+
+    private BearerToken() {
+    }
+
+    /**
+     * @return value of the {@link #HEADER} authenticating the given user or node
+     */
+    public static String create(String subject) {
+        return TokenAuthenticationService.createToken(subject);
+    }
+
+    /**
+     * @param header value of the {@link #HEADER}, may be null
+     * @return the user of a valid token, null for a missing, expired or forged one
+     */
+    public static String subjectOf(String header) {
+        if (header == null) {
+            return null;
+        }
+
+        try {
+            return Jwts.parser()
+                    .setSigningKey(TokenAuthenticationService.SECRET)
+                    .parseClaimsJws(header.replace(TokenAuthenticationService.TOKEN_PREFIX, "").trim())
+                    .getBody()
+                    .getSubject();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
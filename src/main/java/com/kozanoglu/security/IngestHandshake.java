@@ -0,0 +1,58 @@
+package com.kozanoglu.security;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Shared key handshake of the raw ingestion listener, done once per connection instead of once per message.
+ * <ol>
+ * <li>the server sends a random nonce of {@link #NONCE_BYTES}</li>
+ * <li>the client answers with the HMAC-SHA256 of the nonce under the shared key, {@link #MAC_BYTES} long</li>
+ * <li>the server answers {@link #ACCEPTED} followed by a random session token of {@link #TOKEN_BYTES},
+ * which authenticates datagrams for as long as the connection stays open, or closes the connection</li>
+ * </ol>
+ * The key itself never goes over the wire and a recorded answer is useless for any other nonce.
+ */
+public final class IngestHandshake {
+
+    public static final int NONCE_BYTES = 16;
+    public static final int MAC_BYTES = 32;
+    public static final int TOKEN_BYTES = 16;
+    public static final byte ACCEPTED = 0;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private IngestHandshake() {
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the answer to the nonce under the shared key
+     */
+    public static byte[] sign(byte[] key, byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 isn't available", e);
+        }
+    }
+
+    /**
+     * Compares in constant time so the answer can't be guessed byte by byte.
+     */
+    public static boolean verify(byte[] key, byte[] nonce, byte[] answer) {
+        return MessageDigest.isEqual(sign(key, nonce), answer);
+    }
+}
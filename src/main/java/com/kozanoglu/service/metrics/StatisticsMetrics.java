@@ -0,0 +1,215 @@
+package com.kozanoglu.service.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.kozanoglu.model.statistics.BatchResult;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsStreamService;
+
+/**
+ * Counters and latency histograms of the ingestion and read paths, rendered in the Prometheus text format.
+ * Everything recorded on a request goes into pre-allocated {@link LongAdder}s, the window gauges are
+ * only computed when scraped, so the metrics cost the hot path a few uncontended increments.
+ */
+@Service
+public class StatisticsMetrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final IngestOutcome[] OUTCOMES = IngestOutcome.values();
+
+    private final StatisticsService statisticsService;
+    private final StatisticsStreamService statisticsStreamService;
+    private final IngestPipeline ingestPipeline;
+    private final LongAdder[] ingested = new LongAdder[OUTCOMES.length];
+    private final LongAdder invalid = new LongAdder();
+    private final Map<Method, HandlerMetrics> handlers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StatisticsMetrics(StatisticsService statisticsService, StatisticsStreamService statisticsStreamService,
+                             IngestPipeline ingestPipeline) {
+        this.statisticsService = statisticsService;
+        this.statisticsStreamService = statisticsStreamService;
+        this.ingestPipeline = ingestPipeline;
+        for (int i = 0; i < ingested.length; i++) {
+            ingested[i] = new LongAdder();
+        }
+    }
+
+    public void recordIngest(IngestOutcome outcome) {
+        ingested[outcome.ordinal()].increment();
+    }
+
+    public void recordIngest(IngestOutcome outcome, long count) {
+        if (count > 0) {
+            ingested[outcome.ordinal()].add(count);
+        }
+    }
+
+    /**
+     * Counts the outcomes of all transactions of a batch.
+     */
+    public void recordBatch(BatchResult result) {
+        recordIngest(IngestOutcome.ACCEPTED, result.getAccepted());
+        recordIngest(IngestOutcome.STALE, result.getStale());
+        recordIngest(IngestOutcome.TOO_EARLY, result.getTooEarly());
+        recordIngest(IngestOutcome.DUPLICATE, result.getDuplicate());
+        recordInvalid(result.getInvalid());
+    }
+
+    /**
+     * Counts transactions rejected before ingestion, e.g. without an amount or a timestamp.
+     */
+    public void recordInvalid(long count) {
+        if (count > 0) {
+            invalid.add(count);
+        }
+    }
+
+    /**
+     * @return the metrics of the handler method, created on its first request
+     */
+    public HandlerMetrics forHandler(Method method) {
+        HandlerMetrics metrics = handlers.get(method);
+        return metrics != null ? metrics : handlers.computeIfAbsent(method, HandlerMetrics::new);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "transactions_ingested_total", "counter", "Transactions by ingest outcome.");
+        for (IngestOutcome outcome : OUTCOMES) {
+            out.append("transactions_ingested_total{outcome=\"").append(outcome.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(ingested[outcome.ordinal()].sum()).append('\n');
+        }
+
+        header(out, "transactions_invalid_total", "counter", "Transactions rejected as malformed.");
+        out.append("transactions_invalid_total ").append(invalid.sum()).append('\n');
+
+        header(out, "http_server_requests_total", "counter", "Completed requests by handler and status.");
+        for (HandlerMetrics metrics : handlers.values()) {
+            for (int status = 0; status < HandlerMetrics.STATUSES; status++) {
+                LongAdder responses = metrics.responses.get(status);
+                if (responses != null) {
+                    out.append("http_server_requests_total{handler=\"").append(metrics.label)
+                            .append("\",status=\"").append(status).append("\"} ").append(responses.sum()).append('\n');
+                }
+            }
+        }
+
+        header(out, "http_server_request_duration_seconds", "histogram", "Request latency by handler.");
+        for (HandlerMetrics metrics : handlers.values()) {
+            long[] counts = metrics.latency.cumulativeCounts();
+            for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++) {
+                out.append("http_server_request_duration_seconds_bucket{handler=\"").append(metrics.label)
+                        .append("\",le=\"").append(LatencyHistogram.BOUNDS_NANOS[i] / 1e9).append("\"} ")
+                        .append(counts[i]).append('\n');
+            }
+            long count = counts[counts.length - 1];
+            out.append("http_server_request_duration_seconds_bucket{handler=\"").append(metrics.label)
+                    .append("\",le=\"+Inf\"} ").append(count).append('\n');
+            out.append("http_server_request_duration_seconds_sum{handler=\"").append(metrics.label)
+                    .append("\"} ").append(metrics.latency.getSumNanos() / 1e9).append('\n');
+            out.append("http_server_request_duration_seconds_count{handler=\"").append(metrics.label)
+                    .append("\"} ").append(count).append('\n');
+        }
+
+        Integer transactions = statisticsService.getStatisticsForTheLastMinute().getCount();
+        gauge(out, "statistics_window_transactions", "Transactions within the window.",
+                transactions == null ? 0 : transactions);
+        gauge(out, "statistics_window_buckets_occupied", "Buckets of the window holding a transaction.",
+                statisticsService.getOccupiedBuckets());
+        gauge(out, "statistics_window_buckets", "Buckets a window can touch.", statisticsService.getBucketCapacity());
+        gauge(out, "statistics_keys_live", "Keys with a live window.", statisticsService.getLiveKeys());
+        gauge(out, "statistics_stream_subscribers", "Server-Sent Events subscribers.",
+                statisticsStreamService.getSubscribers());
+        if (statisticsService.isDeduplicating()) {
+            gauge(out, "statistics_dedup_false_positive_rate", "False positive rate the id filters are sized for.",
+                    statisticsService.getDeduplicationFalsePositiveRate());
+            gauge(out, "statistics_dedup_estimated_false_positive_rate",
+                    "False positive rate of the fullest id filter of the window, estimated from the ids it holds.",
+                    statisticsService.getEstimatedDeduplicationFalsePositiveRate());
+        }
+        if (ingestPipeline.isEnabled()) {
+            gauge(out, "statistics_pipeline_pending", "Transactions in the ingest ring not applied yet.",
+                    ingestPipeline.getPending());
+            gauge(out, "statistics_pipeline_capacity", "Slots of the ingest ring.", ingestPipeline.getCapacity());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Status counts and latencies of a single handler method.
+     */
+    public static final class HandlerMetrics {
+
+        static final int STATUSES = 600;
+
+        private final String label;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicReferenceArray<LongAdder> responses = new AtomicReferenceArray<>(STATUSES);
+
+        private HandlerMetrics(Method method) {
+            this.label = labelOf(method);
+        }
+
+        public void record(int status, long nanos) {
+            latency.record(nanos);
+            if (status >= 0 && status < STATUSES) {
+                LongAdder counter = responses.get(status);
+                if (counter == null) {
+                    responses.compareAndSet(status, null, new LongAdder());
+                    counter = responses.get(status);
+                }
+                counter.increment();
+            }
+        }
+
+        // overloaded handlers, e.g. the same mapping with different params, are told apart by their parameter types
+        private static String labelOf(Method method) {
+            StringBuilder label = new StringBuilder(method.getDeclaringClass().getSimpleName())
+                    .append('.').append(method.getName());
+            int sameName = 0;
+            for (Method other : method.getDeclaringClass().getMethods()) {
+                if (other.getName().equals(method.getName())) {
+                    sameName++;
+                }
+            }
+
+            if (sameName > 1) {
+                label.append('(');
+                Class<?>[] parameters = method.getParameterTypes();
+                for (int i = 0; i < parameters.length; i++) {
+                    label.append(i > 0 ? "," : "").append(parameters[i].getSimpleName());
+                }
+                label.append(')');
+            }
+            return label.toString();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed size log-linear histogram of amounts in the style of HDR histograms: every power of two between
+ * 2^-10 and 2^41 is split into 16 linear sub-buckets taken straight from the top mantissa bits,
+ * so a recorded value costs one atomic increment and a reported value is off by at most 1/32 of it.
+ * Histograms of different buckets merge by adding their counters. Amounts below the range (including zero
+ * and negative ones) land in the first counter, amounts above it in the last.
+ */
+final class AmountHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = -10;
+    private static final int MAX_EXPONENT = 40;
+
+    static final int SIZE = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(SIZE);
+
+    void record(double amount) {
+        counts.incrementAndGet(indexOf(amount));
+    }
+
+    void foldInto(long[] into) {
+        for (int i = 0; i < SIZE; i++) {
+            into[i] += counts.get(i);
+        }
+    }
+
+    /**
+     * @param counts     folded counters of one or more histograms
+     * @param percentile percentile between 0 (exclusive) and 100 (inclusive)
+     * @return the middle of the counter which holds the value at the percentile, NaN if nothing was recorded
+     */
+    static double valueAtPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(SIZE - 1);
+    }
+
+    static int indexOf(double amount) {
+        if (!(amount >= Double.MIN_NORMAL)) {
+            return 0;
+        }
+
+        int exponent = Math.getExponent(amount);
+        if (exponent < MIN_EXPONENT) {
+            return 0;
+        }
+
+        if (exponent > MAX_EXPONENT) {
+            return SIZE - 1;
+        }
+
+        int subBucket = (int) (Double.doubleToRawLongBits(amount) >>> (52 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static double valueOf(int index) {
+        int exponent = index / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = index % SUB_BUCKETS;
+        return Math.scalb(1.0 + (subBucket + 0.5) / SUB_BUCKETS, exponent);
+    }
+}
@@ -0,0 +1,84 @@
+package com.kozanoglu.service.statistics;
+
+/**
+ * Single threaded, per-bucket pre-aggregation of a batch. Each bucket is merged into the {@link StatisticsService}
+ * with one bucket update, either when the batch is flushed or when a newer bucket needs its slot.
+ * Only the histograms for percentiles and the journal are written per transaction.
+ * <p>
+ * A bucket which left the window while a long batch was read is dropped on merge and its transactions are
+ * reported by {@link #flush()}. Their histogram entries and journal records stay behind, but both are only
+ * read within the window, which the bucket already left, so they never disagree with the counts.
+ * An aggregator is empty again after every flush and meant to be reused, e.g. one per thread.
+ */
+class BatchAggregator {
+
+    private final StatisticsService statisticsService;
+    private final StatisticsWindow window;
+    private final TransactionJournal journal;
+    private final int slots;
+    private final long[] bucketIndexes;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+    private int dropped;
+
+    BatchAggregator(StatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+        this.window = statisticsService.getWindow();
+        this.journal = statisticsService.getJournal();
+        this.slots = window.getSlots();
+        this.bucketIndexes = new long[slots];
+        this.counts = new long[slots];
+        this.sums = new double[slots];
+        this.mins = new double[slots];
+        this.maxs = new double[slots];
+    }
+
+    void add(long timestamp, double amount) {
+        long bucketIndex = window.bucketIndexOf(timestamp);
+        int slot = (int) Math.floorMod(bucketIndex, (long) slots);
+
+        if (counts[slot] > 0 && bucketIndexes[slot] != bucketIndex) {
+            flush(slot);
+        }
+
+        if (counts[slot] == 0) {
+            bucketIndexes[slot] = bucketIndex;
+            sums[slot] = amount;
+            mins[slot] = amount;
+            maxs[slot] = amount;
+        } else {
+            sums[slot] += amount;
+            mins[slot] = Math.min(mins[slot], amount);
+            maxs[slot] = Math.max(maxs[slot], amount);
+        }
+        counts[slot]++;
+        window.record(bucketIndex, amount);
+        journal.append(timestamp, amount);
+    }
+
+    /**
+     * Merges every bucket still pending.
+     *
+     * @return transactions added since the last flush which were dropped as their bucket left the window meanwhile
+     */
+    int flush() {
+        for (int slot = 0; slot < slots; slot++) {
+            if (counts[slot] > 0) {
+                flush(slot);
+            }
+        }
+
+        int droppedSinceFlush = dropped;
+        dropped = 0;
+        return droppedSinceFlush;
+    }
+
+    private void flush(int slot) {
+        if (!statisticsService.merge(bucketIndexes[slot], counts[slot], sums[slot], mins[slot], maxs[slot])) {
+            dropped += counts[slot];
+        }
+        counts[slot] = 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.kozanoglu.service.statistics;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import com.kozanoglu.model.statistics.StatisticPerSecond;
+
+/**
+ * Binary export of raw buckets, exchanged between the nodes of a cluster. Every bucket is a fixed 40 byte record
+ * of its start in epoch millis, sum, count, min and max, big endian, with nothing before or between the records.
+ */
+final class BucketExport {
+
+    static final int RECORD_BYTES = 40;
+
+    private BucketExport() {
+    }
+
+    static byte[] encode(List<StatisticPerSecond> buckets) {
+        ByteBuffer buffer = ByteBuffer.allocate(buckets.size() * RECORD_BYTES);
+        for (StatisticPerSecond bucket : buckets) {
+            buffer.putLong(bucket.getTimestamp());
+            buffer.putDouble(bucket.getSum());
+            buffer.putLong(bucket.getCount());
+            buffer.putDouble(bucket.getMin());
+            buffer.putDouble(bucket.getMax());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Merges the buckets of an export which are within the window ending at the given time by bucket index,
+     * so buckets of several nodes for the same bucket are combined whatever their order.
+     *
+     * @throws IllegalArgumentException if the export isn't made of whole records
+     */
+    static void mergeInto(byte[] export, StatisticsWindow window, long now, Map<Long, StatisticsAccumulator> buckets) {
+        if (export.length % RECORD_BYTES != 0) {
+            throw new IllegalArgumentException(String.format("Bucket export of [%d] bytes is truncated", export.length));
+        }
+
+        long fromIndex = window.oldestBucketIndex(now);
+        long toIndex = window.bucketIndexOf(now);
+        ByteBuffer buffer = ByteBuffer.wrap(export);
+        while (buffer.hasRemaining()) {
+            long index = window.bucketIndexOf(buffer.getLong());
+            double sum = buffer.getDouble();
+            long count = buffer.getLong();
+            double min = buffer.getDouble();
+            double max = buffer.getDouble();
+
+            if (index >= fromIndex && index <= toIndex) {
+                buckets.computeIfAbsent(index, i -> new StatisticsAccumulator()).accumulate(count, sum, min, max);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.security.BearerToken;
+
+/**
+ * Statistics of the whole cluster for nodes running in aggregator mode. The raw buckets of every configured peer
+ * are fetched in parallel and merged with the local ones by bucket, so each node only has to know its own slice.
+ * A peer which fails or doesn't answer in time is left out of the result and logged.
+ */
+@Service
+public class ClusterStatisticsService {
+
+    private static final Log LOGGER = LogFactory.getLog(ClusterStatisticsService.class);
+
+    static final String EXPORT_PATH = "/statistics/buckets";
+
+    private static final String PEER_SUBJECT = "peer";
+
+    private final StatisticsService statisticsService;
+    private final RestTemplate restTemplate;
+    private final boolean aggregator;
+    private final List<String> peers;
+    private final long timeoutMillis;
+    private final ExecutorService fetchers;
+
+    @Autowired
+    public ClusterStatisticsService(StatisticsService statisticsService,
+                                    @Qualifier("peerRestTemplate") RestTemplate restTemplate,
+                                    @Value("${statistics.cluster.aggregator}") boolean aggregator,
+                                    @Value("${statistics.cluster.peers}") String[] peers,
+                                    @Value("${statistics.cluster.timeout_millis}") long timeoutMillis) {
+        this.statisticsService = statisticsService;
+        this.restTemplate = restTemplate;
+        this.aggregator = aggregator;
+        this.peers = new ArrayList<>();
+        for (String peer : peers) {
+            if (!peer.trim().isEmpty()) {
+                this.peers.add(peer.trim());
+            }
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.fetchers = aggregator && !this.peers.isEmpty() ? Executors.newFixedThreadPool(this.peers.size()) : null;
+    }
+
+    public boolean isAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Merges the buckets of this node and of every peer which answered within the timeout.
+     *
+     * @return StatisticsResult object of the cluster
+     */
+    public StatisticsResult getStatisticsForTheLastMinute() {
+        return getStatisticsForWindow(statisticsService.getWindow().getWindowMillis());
+    }
+
+    /**
+     * Merges the buckets of this node and of every peer which answered within the timeout and folds
+     * the most recent part of the configured window, e.g. the last 5 seconds.
+     *
+     * @param windowMillis length of the sub-window, a multiple of the bucket length up to the window length
+     * @throws IllegalArgumentException for any other length
+     */
+    public StatisticsResult getStatisticsForWindow(long windowMillis) {
+        statisticsService.getWindow().oldestBucketIndex(statisticsService.currentTimeMillis(), windowMillis);
+        long started = statisticsService.currentTimeMillis();
+        String token = BearerToken.create(PEER_SUBJECT);
+        List<CompletableFuture<byte[]>> exports = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            exports.add(CompletableFuture.supplyAsync(() -> fetch(peer, token), fetchers));
+        }
+
+        List<byte[]> merged = new ArrayList<>(peers.size() + 1);
+        merged.add(statisticsService.exportBuckets());
+        for (int i = 0; i < exports.size(); i++) {
+            long remaining = Math.max(0, started + timeoutMillis - statisticsService.currentTimeMillis());
+            try {
+                merged.add(exports.get(i).get(remaining, TimeUnit.MILLISECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+                exports.get(i).cancel(true);
+                LOGGER.warn(String.format("Buckets of peer [%s] are left out", peers.get(i)), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return merge(merged, statisticsService.getWindow(), statisticsService.currentTimeMillis(), windowMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fetchers != null) {
+            fetchers.shutdownNow();
+        }
+    }
+
+    /**
+     * Merges bucket exports by bucket and folds the merged buckets of the window ending at the given time.
+     */
+    static StatisticsResult merge(List<byte[]> exports, StatisticsWindow window, long now) {
+        return merge(exports, window, now, window.getWindowMillis());
+    }
+
+    /**
+     * Merges bucket exports by bucket and folds the merged buckets of the sub-window of the given length
+     * ending at the given time.
+     */
+    static StatisticsResult merge(List<byte[]> exports, StatisticsWindow window, long now, long windowMillis) {
+        long fromIndex = window.oldestBucketIndex(now, windowMillis);
+        Map<Long, StatisticsAccumulator> buckets = new HashMap<>();
+        for (byte[] export : exports) {
+            BucketExport.mergeInto(export, window, now, buckets);
+        }
+
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (Map.Entry<Long, StatisticsAccumulator> bucket : buckets.entrySet()) {
+            if (bucket.getKey() >= fromIndex) {
+                StatisticsAccumulator merged = bucket.getValue();
+                accumulator.accumulate(merged.getCount(), merged.getSum(), merged.getMin(), merged.getMax());
+            }
+        }
+        return accumulator.writeTo(new StatisticsResult());
+    }
+
+    private byte[] fetch(String peer, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(BearerToken.HEADER, token);
+        byte[] export = restTemplate.exchange(peer + EXPORT_PATH, HttpMethod.GET, new HttpEntity<>(headers), byte[].class).getBody();
+        if (export == null) {
+            return new byte[0];
+        }
+
+        if (export.length % BucketExport.RECORD_BYTES != 0) {
+            throw new IllegalStateException(String.format("Peer [%s] sent a truncated export of [%d] bytes", peer, export.length));
+        }
+        return export;
+    }
+}
@@ -0,0 +1,19 @@
+package com.kozanoglu.service.statistics;
+
+/**
+ * What happened to a single ingested transaction.
+ */
+public enum IngestOutcome {
+
+    ACCEPTED,
+    /** Older than the window, dropped. */
+    STALE,
+    /** Further ahead of now than the allowed clock skew, rejected. */
+    TOO_EARLY,
+    /** Handed to the {@link IngestPipeline} and applied shortly after. */
+    QUEUED,
+    /** Not taken because the {@link IngestPipeline} is full. */
+    REJECTED,
+    /** Id already seen within the window, dropped. */
+    DUPLICATE
+}
@@ -0,0 +1,261 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.kozanoglu.util.EventTime;
+
+/**
+ * Optional single writer in front of the {@link StatisticsService}. Request threads classify a transaction,
+ * claim the next slot of a preallocated ring and publish it there, a single aggregator thread drains the ring
+ * in batches through a {@link BatchAggregator}, so the window is written by one thread with one bucket update
+ * per bucket and batch.
+ * <p>
+ * A full ring rejects instead of blocking, so overload surfaces as {@link IngestOutcome#REJECTED} right away.
+ * Depending on the mode a transaction is {@link IngestOutcome#QUEUED} as soon as it is published
+ * or {@link IngestOutcome#ACCEPTED} once the aggregator applied it, waiting producers are parked until the aggregator
+ * unparks them. Disabled, transactions are persisted directly.
+ */
+@Service
+public class IngestPipeline {
+
+    private static final Log LOGGER = LogFactory.getLog(IngestPipeline.class);
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // timestamp of a slot claimed by a duplicate, published without a transaction so the sequence has no gap
+    private static final long SKIPPED = Long.MIN_VALUE;
+
+    private final StatisticsService statisticsService;
+    private final boolean enabled;
+    private final boolean fireAndForget;
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+
+    private final long[] timestamps;
+    private final double[] amounts;
+    private final String[] keys;
+    // producer waiting for the transaction of each slot to be applied, null for none
+    private final Thread[] waiters;
+    // sequence last published into each slot, -1 for none
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong applied = new AtomicLong(-1);
+
+    private Thread aggregator;
+    private volatile boolean running;
+    private volatile boolean idle;
+
+    /**
+     * @param capacity      slots of the ring, a power of two
+     * @param fireAndForget whether transactions are queued only instead of waited for until they are applied
+     * @param batchSize     most transactions applied in one go
+     */
+    @Autowired
+    public IngestPipeline(StatisticsService statisticsService,
+                          @Value("${statistics.pipeline.enabled}") boolean enabled,
+                          @Value("${statistics.pipeline.capacity}") int capacity,
+                          @Value("${statistics.pipeline.fire_and_forget}") boolean fireAndForget,
+                          @Value("${statistics.pipeline.batch_size}") int batchSize) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(String.format("Capacity of [%d] isn't a power of two", capacity));
+        }
+
+        this.statisticsService = statisticsService;
+        this.enabled = enabled;
+        this.fireAndForget = fireAndForget;
+        this.capacity = enabled ? capacity : 1;
+        this.mask = this.capacity - 1;
+        this.batchSize = batchSize;
+        this.timestamps = new long[this.capacity];
+        this.amounts = new double[this.capacity];
+        this.keys = new String[this.capacity];
+        this.waiters = new Thread[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int slot = 0; slot < this.capacity; slot++) {
+            published.set(slot, -1);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether {@link #persist} may park the caller until the aggregator applied its transaction
+     */
+    public boolean isWaiting() {
+        return enabled && !fireAndForget;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        aggregator = new Thread(this::drain, "ingest-aggregator");
+        aggregator.setDaemon(true);
+        aggregator.start();
+    }
+
+    /**
+     * Stops once everything published is applied.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (aggregator != null) {
+            running = false;
+            LockSupport.unpark(aggregator);
+            aggregator.join();
+        }
+    }
+
+    /**
+     * Same as {@link StatisticsService#persist(String, long, double)} through the ring if enabled.
+     *
+     * @return {@link IngestOutcome#REJECTED} if the ring is full, {@link IngestOutcome#QUEUED} for an in time
+     * transaction in fire and forget mode
+     */
+    public IngestOutcome persist(String key, long timestamp, double amount) {
+        return persist(null, key, timestamp, amount);
+    }
+
+    /**
+     * Same as {@link StatisticsService#persist(String, String, long, double)} through the ring if enabled.
+     * The id is checked once a slot is claimed, so a transaction rejected for a full ring isn't taken for
+     * a duplicate when it is sent again.
+     */
+    public IngestOutcome persist(String id, String key, long timestamp, double amount) {
+        if (!enabled) {
+            return statisticsService.persist(id, key, timestamp, amount);
+        }
+
+        long now = statisticsService.currentTimeMillis();
+        EventTime eventTime = statisticsService.classify(timestamp, now);
+        switch (eventTime) {
+            case LATE:
+                return IngestOutcome.STALE;
+            case TOO_EARLY:
+                return IngestOutcome.TOO_EARLY;
+            default:
+                break;
+        }
+
+        long sequence;
+        do {
+            sequence = claimed.get() + 1;
+            if (sequence - applied.get() > capacity) {
+                return IngestOutcome.REJECTED;
+            }
+        } while (!claimed.compareAndSet(sequence - 1, sequence));
+
+        int slot = (int) sequence & mask;
+        boolean duplicate = statisticsService.isDuplicate(id, timestamp);
+        if (duplicate) {
+            timestamps[slot] = SKIPPED;
+        } else {
+            timestamps[slot] = eventTime == EventTime.EARLY ? now : timestamp;
+            amounts[slot] = amount;
+            keys[slot] = key;
+            if (!fireAndForget) {
+                waiters[slot] = Thread.currentThread();
+            }
+        }
+        published.set(slot, sequence);
+        if (idle) {
+            LockSupport.unpark(aggregator);
+        }
+
+        if (duplicate) {
+            return IngestOutcome.DUPLICATE;
+        }
+
+        if (fireAndForget) {
+            return IngestOutcome.QUEUED;
+        }
+
+        // the aggregator unparks after applying, a wakeup for anything else parks again
+        while (applied.get() < sequence) {
+            LockSupport.park(this);
+        }
+        return IngestOutcome.ACCEPTED;
+    }
+
+    /**
+     * @return transactions published but not applied yet
+     */
+    public long getPending() {
+        return Math.max(0, claimed.get() - applied.get());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void drain() {
+        BatchAggregator batch = new BatchAggregator(statisticsService);
+        Thread[] wake = new Thread[batchSize];
+        long next = applied.get() + 1;
+        while (running || next <= claimed.get()) {
+            int drained = 0;
+            int slot = (int) next & mask;
+            try {
+                while (drained < batchSize && published.get(slot) == next) {
+                    // taken before the slot is freed, a producer claiming it next registers itself there
+                    wake[drained++] = waiters[slot];
+                    waiters[slot] = null;
+                    String key = keys[slot];
+                    keys[slot] = null;
+                    long timestamp = timestamps[slot];
+                    double amount = amounts[slot];
+                    slot = (int) ++next & mask;
+
+                    if (timestamp != SKIPPED) {
+                        batch.add(timestamp, amount);
+                    }
+                    if (key != null) {
+                        statisticsService.persistForKey(key, timestamp, amount);
+                    }
+                }
+
+                if (drained > 0) {
+                    batch.flush();
+                }
+            } catch (RuntimeException e) {
+                // producers are answered all the same, the aggregator must not stop nor stall the ring
+                LOGGER.error(String.format("Failed to apply transactions before sequence [%d]", next), e);
+            }
+
+            if (drained > 0) {
+                // only now the slots are free and waiting producers see their transactions applied
+                applied.set(next - 1);
+                for (int i = 0; i < drained; i++) {
+                    if (wake[i] != null) {
+                        LockSupport.unpark(wake[i]);
+                        wake[i] = null;
+                    }
+                }
+                continue;
+            }
+
+            idle = true;
+            if (published.get(slot) != next && running) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            idle = false;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.annotation.Order;
+
+import com.kozanoglu.model.statistics.KeyedStatisticsResult;
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+/**
+ * Sliding windows per transaction key (merchant, currency, channel...), next to the global window.
+ * The number of live keys is capped: when a new key would exceed the cap, keys without a write in the last window
+ * are evicted first and, if that is not enough, the least recently written ones until a tenth of the cap is free again.
+ * Keys are counted with a single atomic counter, so concurrent new keys never exceed the cap, and a window is only
+ * evicted while no write is in flight on it, so a write is never lost to an eviction.
+ * Key windows are neither striped nor keep histograms so a key costs a few kilobytes at most.
+ * <p>
+ * The keys with the highest sum are ranked once per tick, so reading them costs no pass over the keys.
+ */
+@Order(3)
+public class KeyedStatistics implements TickListener {
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final int maxKeys;
+    private final int topKeys;
+    private final Map<String, KeyedWindow> windows = new ConcurrentHashMap<>();
+    // windows in the map, reserved before a window is added and given back once it is removed
+    private final AtomicInteger liveKeys = new AtomicInteger();
+    private final Object evictionLock = new Object();
+    private volatile List<KeyedStatisticsResult> top;
+
+    /**
+     * @param maxKeys most keys with a window of their own
+     * @param topKeys most keys ranked on every tick, the most a top list can hold
+     */
+    public KeyedStatistics(long windowMillis, long bucketMillis, int maxKeys, int topKeys) {
+        this.windowMillis = windowMillis;
+        this.bucketMillis = bucketMillis;
+        this.maxKeys = maxKeys;
+        this.topKeys = topKeys;
+    }
+
+    public void persist(String key, long timestamp, double amount, long now) {
+        while (true) {
+            KeyedWindow keyedWindow = windows.get(key);
+            if (keyedWindow == null) {
+                keyedWindow = create(key, now);
+            }
+
+            if (keyedWindow.enter()) {
+                try {
+                    keyedWindow.lastWrite = now;
+                    keyedWindow.window.add(timestamp, amount);
+                } finally {
+                    keyedWindow.exit();
+                }
+                return;
+            }
+            // evicted between the lookup and the write, the key gets a window of its own again
+        }
+    }
+
+    /**
+     * @return statistics of the key, null if the key is not live
+     */
+    public StatisticsResult getStatistics(String key, long now) {
+        KeyedWindow keyedWindow = windows.get(key);
+        return keyedWindow == null ? null : keyedWindow.window.aggregate(now);
+    }
+
+    /**
+     * @param limit capped at the keys ranked on every tick
+     * @return the keys with the highest sum as of the last tick, highest first, ranked right away before the first tick
+     */
+    public List<KeyedStatisticsResult> getTopBySum(int limit, long now) {
+        List<KeyedStatisticsResult> ranked = top;
+        if (ranked == null) {
+            ranked = rank(now);
+        }
+        return new ArrayList<>(ranked.subList(0, Math.min(limit, ranked.size())));
+    }
+
+    @Override
+    public void onTick(long now) {
+        top = rank(now);
+    }
+
+    /**
+     * Aggregates every live key and keeps the ones with the highest sum, highest first.
+     */
+    private List<KeyedStatisticsResult> rank(long now) {
+        PriorityQueue<KeyedStatisticsResult> highest = new PriorityQueue<>(topKeys + 1, Comparator.comparing(StatisticsResult::getSum));
+        for (Map.Entry<String, KeyedWindow> entry : windows.entrySet()) {
+            KeyedStatisticsResult result = new KeyedStatisticsResult();
+            entry.getValue().window.aggregateInto(now, result);
+            if (result.getCount() == 0) {
+                continue;
+            }
+
+            result.setKey(entry.getKey());
+            highest.add(result);
+            if (highest.size() > topKeys) {
+                highest.poll();
+            }
+        }
+
+        List<KeyedStatisticsResult> results = new ArrayList<>(highest);
+        results.sort(Comparator.comparing(StatisticsResult::getSum).reversed());
+        return results;
+    }
+
+    public int getLiveKeys() {
+        return liveKeys.get();
+    }
+
+    public void clear() {
+        synchronized (evictionLock) {
+            for (Map.Entry<String, KeyedWindow> entry : windows.entrySet()) {
+                remove(entry.getKey(), entry.getValue());
+            }
+            top = null;
+        }
+    }
+
+    /**
+     * @return the window of the key, added if the key has none yet, which may have been evicted in the meantime
+     */
+    private KeyedWindow create(String key, long now) {
+        while (true) {
+            KeyedWindow existing = windows.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            int live = liveKeys.get();
+            if (live >= maxKeys) {
+                evict(now);
+                continue;
+            }
+
+            if (liveKeys.compareAndSet(live, live + 1)) {
+                KeyedWindow fresh = new KeyedWindow(new StatisticsWindow(windowMillis, bucketMillis, false, false));
+                existing = windows.putIfAbsent(key, fresh);
+                if (existing == null) {
+                    return fresh;
+                }
+                liveKeys.decrementAndGet();
+                return existing;
+            }
+        }
+    }
+
+    private void evict(long now) {
+        synchronized (evictionLock) {
+            if (liveKeys.get() < maxKeys) {
+                return;
+            }
+
+            for (Map.Entry<String, KeyedWindow> entry : windows.entrySet()) {
+                if (now - entry.getValue().lastWrite >= windowMillis) {
+                    remove(entry.getKey(), entry.getValue());
+                }
+            }
+
+            int excess = liveKeys.get() - (maxKeys - Math.max(1, maxKeys / 10));
+            if (excess <= 0) {
+                return;
+            }
+
+            List<Map.Entry<String, KeyedWindow>> entries = new ArrayList<>(windows.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastWrite));
+            for (int i = 0; i < entries.size() && excess > 0; i++) {
+                if (remove(entries.get(i).getKey(), entries.get(i).getValue())) {
+                    excess--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if a write is in flight on the window, it is kept then
+     */
+    private boolean remove(String key, KeyedWindow keyedWindow) {
+        if (!keyedWindow.retire()) {
+            return false;
+        }
+
+        if (windows.remove(key, keyedWindow)) {
+            liveKeys.decrementAndGet();
+        }
+        return true;
+    }
+
+    private static final class KeyedWindow {
+
+        // retired windows are out of the map or on their way out and take no more writes
+        private static final int RETIRED = -1;
+
+        private final StatisticsWindow window;
+        // writes in flight, or RETIRED
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile long lastWrite;
+
+        private KeyedWindow(StatisticsWindow window) {
+            this.window = window;
+        }
+
+        /**
+         * @return false if the window is retired, nothing may be written to it then
+         */
+        private boolean enter() {
+            int current;
+            do {
+                current = writers.get();
+                if (current == RETIRED) {
+                    return false;
+                }
+            } while (!writers.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void exit() {
+            writers.decrementAndGet();
+        }
+
+        private boolean retire() {
+            return writers.compareAndSet(0, RETIRED);
+        }
+    }
+}
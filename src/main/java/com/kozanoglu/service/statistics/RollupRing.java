@@ -0,0 +1,103 @@
+package com.kozanoglu.service.statistics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Off-heap ring of aggregates per period, e.g. per minute for a month. Every period is a fixed 40 byte record
+ * of its index, count, sum, min and max in a direct buffer at the slot of its index modulo the ring size,
+ * so keeping a long history costs no heap objects at all. A single writer merges into the records,
+ * readers run optimistically and only fall back to the read lock if a write got in between.
+ */
+final class RollupRing {
+
+    private static final int RECORD_BYTES = 40;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long periodMillis;
+    private final int periods;
+    private final ByteBuffer records;
+    private final StampedLock lock = new StampedLock();
+
+    RollupRing(long periodMillis, int periods) {
+        this.periodMillis = periodMillis;
+        this.periods = periods;
+        this.records = ByteBuffer.allocateDirect(periods * RECORD_BYTES);
+        for (int slot = 0; slot < periods; slot++) {
+            records.putLong(slot * RECORD_BYTES, EMPTY);
+        }
+    }
+
+    long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /**
+     * Merges aggregates into the period of the timestamp. Aggregates of a period older than the one
+     * in its slot have left the ring already and are dropped.
+     */
+    void add(long timestamp, long count, double sum, double min, double max) {
+        long index = Math.floorDiv(timestamp, periodMillis);
+        int offset = offsetOf(index);
+        long stamp = lock.writeLock();
+        try {
+            long current = records.getLong(offset);
+            if (current > index) {
+                return;
+            }
+
+            if (current == index) {
+                count += records.getLong(offset + 8);
+                sum += records.getDouble(offset + 16);
+                min = Math.min(min, records.getDouble(offset + 24));
+                max = Math.max(max, records.getDouble(offset + 32));
+            }
+            records.putLong(offset, index);
+            records.putLong(offset + 8, count);
+            records.putDouble(offset + 16, sum);
+            records.putDouble(offset + 24, min);
+            records.putDouble(offset + 32, max);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Folds the periods from the one of the first timestamp up to, not including, the one of the second.
+     */
+    void foldInto(long fromTimestamp, long toTimestamp, StatisticsAccumulator accumulator) {
+        long fromIndex = Math.floorDiv(fromTimestamp, periodMillis);
+        long toIndex = Math.floorDiv(toTimestamp, periodMillis) - 1;
+        StatisticsAccumulator periodsAccumulator = new StatisticsAccumulator();
+
+        long stamp = lock.tryOptimisticRead();
+        fold(fromIndex, toIndex, periodsAccumulator);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                periodsAccumulator.reset();
+                fold(fromIndex, toIndex, periodsAccumulator);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        accumulator.accumulate(periodsAccumulator.getCount(), periodsAccumulator.getSum(),
+                periodsAccumulator.getMin(), periodsAccumulator.getMax());
+    }
+
+    private void fold(long fromIndex, long toIndex, StatisticsAccumulator accumulator) {
+        // a range longer than the ring visits every slot once at most
+        for (long index = Math.max(fromIndex, toIndex - periods + 1); index <= toIndex; index++) {
+            int offset = offsetOf(index);
+            if (records.getLong(offset) == index) {
+                accumulator.accumulate(records.getLong(offset + 8), records.getDouble(offset + 16),
+                        records.getDouble(offset + 24), records.getDouble(offset + 32));
+            }
+        }
+    }
+
+    private int offsetOf(long index) {
+        return (int) Math.floorMod(index, (long) periods) * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,67 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Bottom-up segment tree of count, sum, min and max over a fixed number of leaves in primitive arrays.
+ * Setting a leaf and folding a contiguous range of leaves both cost O(log n). Not thread safe.
+ */
+final class SegmentTree {
+
+    private final int leaves;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+
+    SegmentTree(int leaves) {
+        this.leaves = leaves;
+        this.counts = new long[2 * leaves];
+        this.sums = new double[2 * leaves];
+        this.mins = new double[2 * leaves];
+        this.maxs = new double[2 * leaves];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+    }
+
+    void set(int leaf, long count, double sum, double min, double max) {
+        int node = leaf + leaves;
+        counts[node] = count;
+        sums[node] = count > 0 ? sum : 0.0;
+        mins[node] = count > 0 ? min : Double.POSITIVE_INFINITY;
+        maxs[node] = count > 0 ? max : Double.NEGATIVE_INFINITY;
+
+        for (node >>= 1; node > 0; node >>= 1) {
+            int left = 2 * node;
+            int right = left + 1;
+            counts[node] = counts[left] + counts[right];
+            sums[node] = sums[left] + sums[right];
+            mins[node] = Math.min(mins[left], mins[right]);
+            maxs[node] = Math.max(maxs[left], maxs[right]);
+        }
+    }
+
+    /**
+     * Folds the leaves from the first to the last one, both inclusive.
+     */
+    void foldInto(int fromLeaf, int toLeaf, StatisticsAccumulator accumulator) {
+        for (int left = fromLeaf + leaves, right = toLeaf + leaves + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                fold(left++, accumulator);
+            }
+            if ((right & 1) == 1) {
+                fold(--right, accumulator);
+            }
+        }
+    }
+
+    private void fold(int node, StatisticsAccumulator accumulator) {
+        accumulator.accumulate(counts[node], sums[node], mins[node], maxs[node]);
+    }
+}
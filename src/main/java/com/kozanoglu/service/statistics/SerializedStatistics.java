@@ -0,0 +1,116 @@
+package com.kozanoglu.service.statistics;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+/**
+ * JSON representation of the statistics of the window, serialized once per version of the window instead of per
+ * request. A version is any change of the statistics: a write landing or a bucket leaving the window.
+ * The statistics of a request are compared against the last serialized ones, by reference first, so with the
+ * snapshot published on the tick an unchanged window costs a single reference comparison.
+ * Every version carries a strong ETag derived from its bytes, equal bytes always get the same ETag.
+ */
+@Service
+public class SerializedStatistics {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int ETAG_BYTES = 8;
+
+    private final ObjectMapper objectMapper;
+    private final long maxAgeSeconds;
+    private volatile Version last;
+
+    /**
+     * @param tickMillis interval the statistics are refreshed at, clients may cache them for as long
+     */
+    @Autowired
+    public SerializedStatistics(ObjectMapper objectMapper, @Value("${statistics.tick_millis}") long tickMillis) {
+        this.objectMapper = objectMapper;
+        this.maxAgeSeconds = tickMillis / 1000;
+    }
+
+    /**
+     * @return the version of the given statistics, serialized only if they differ from the last ones
+     */
+    public Version of(StatisticsResult statistics) throws JsonProcessingException {
+        Version version = last;
+        if (version != null && sameStatistics(version.statistics, statistics)) {
+            return version;
+        }
+
+        byte[] body = objectMapper.writeValueAsBytes(statistics);
+        version = new Version(statistics, body, etagOf(body));
+        last = version;
+        return version;
+    }
+
+    /**
+     * @return seconds the statistics of a version may be cached for, the tick rounded down
+     */
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    private static boolean sameStatistics(StatisticsResult a, StatisticsResult b) {
+        return a == b || (Objects.equals(a.getCount(), b.getCount())
+                && Objects.equals(a.getSum(), b.getSum())
+                && Objects.equals(a.getMin(), b.getMin())
+                && Objects.equals(a.getMax(), b.getMax())
+                && Objects.equals(a.getAvg(), b.getAvg())
+                && Objects.equals(a.getPercentiles(), b.getPercentiles()));
+    }
+
+    private static String etagOf(byte[] body) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't available", e);
+        }
+
+        char[] etag = new char[2 + 2 * ETAG_BYTES];
+        etag[0] = '"';
+        for (int i = 0; i < ETAG_BYTES; i++) {
+            etag[1 + 2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            etag[2 + 2 * i] = HEX[digest[i] & 0xf];
+        }
+        etag[etag.length - 1] = '"';
+        return new String(etag);
+    }
+
+    public static final class Version {
+
+        private final StatisticsResult statistics;
+        private final byte[] body;
+        private final String etag;
+
+        private Version(StatisticsResult statistics, byte[] body, String etag) {
+            this.statistics = statistics;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        /**
+         * @return the serialized statistics, shared by every request of the version, not to be modified
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the strong ETag, quoted
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
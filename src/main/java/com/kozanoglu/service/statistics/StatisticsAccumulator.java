@@ -0,0 +1,60 @@
+package com.kozanoglu.service.statistics;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+/**
+ * Mutable, single threaded fold of bucket aggregates. Used on the read side to combine buckets and cells.
+ */
+class StatisticsAccumulator {
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void accumulate(long count, double sum, double min, double max) {
+        if (count == 0) {
+            return;
+        }
+
+        this.count += count;
+        this.sum += sum;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    void reset() {
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    double getSum() {
+        return sum;
+    }
+
+    double getMin() {
+        return min;
+    }
+
+    double getMax() {
+        return max;
+    }
+
+    /**
+     * Writes the accumulated values to the given result, an empty accumulator reports zeros.
+     */
+    <T extends StatisticsResult> T writeTo(T result) {
+        result.setCount((int) count);
+        result.setSum(sum);
+        result.setAvg(count > 0 ? sum / count : 0.0);
+        result.setMin(count > 0 ? min : 0.0);
+        result.setMax(count > 0 ? max : 0.0);
+        return result;
+    }
+}
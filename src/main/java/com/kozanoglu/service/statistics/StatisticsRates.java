@@ -0,0 +1,127 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.Arrays;
+
+import org.springframework.core.annotation.Order;
+
+import com.kozanoglu.model.statistics.RateResult;
+import com.kozanoglu.model.statistics.RatesResult;
+
+/**
+ * Smoothed transaction and amount rates: 1, 5 and 15 minute exponentially weighted moving averages per second,
+ * next to the rate of the last tick. Every bucket is folded into the averages once, on the first tick after it is
+ * sealed, so the rates trail now by the allowed lateness and cost nothing per transaction.
+ * The averages decay per bucket, independent of how often the tick runs.
+ */
+@Order(7)
+public class StatisticsRates implements TickListener {
+
+    private static final long[] AVERAGED_MILLIS = {60_000L, 5 * 60_000L, 15 * 60_000L};
+
+    private final StatisticsWindow window;
+    private final boolean enabled;
+    private final long openBuckets;
+    private final double bucketSeconds;
+    // weight of a single bucket in each of the averages
+    private final double[] alphas = new double[AVERAGED_MILLIS.length];
+    private final double[] transactions = new double[AVERAGED_MILLIS.length];
+    private final double[] amounts = new double[AVERAGED_MILLIS.length];
+    private final StatisticsAccumulator accumulator = new StatisticsAccumulator();
+    private long foldedTo = Long.MIN_VALUE;
+    private volatile RatesResult rates;
+
+    /**
+     * @param allowedLatenessMillis how long after its end a bucket is still expected to receive writes
+     */
+    public StatisticsRates(StatisticsWindow window, boolean enabled, long allowedLatenessMillis) {
+        this.window = window;
+        this.enabled = enabled;
+        this.openBuckets = (allowedLatenessMillis + window.getBucketMillis() - 1) / window.getBucketMillis() + 1;
+        this.bucketSeconds = window.getBucketMillis() / 1000.0;
+        for (int i = 0; i < AVERAGED_MILLIS.length; i++) {
+            alphas[i] = 1 - Math.exp(-(double) window.getBucketMillis() / AVERAGED_MILLIS[i]);
+        }
+        this.rates = result(0, 0.0, 0.0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ticks and clears run one at a time, the averages are only touched under the monitor
+    @Override
+    public synchronized void onTick(long now) {
+        if (!enabled) {
+            return;
+        }
+
+        long lastSealed = window.bucketIndexOf(now) - openBuckets;
+        long oldest = window.oldestBucketIndex(now);
+        long from = foldedTo == Long.MIN_VALUE ? oldest : foldedTo + 1;
+        if (from < oldest) {
+            // buckets which left the window before a tick folded them, e.g. after a long pause, count as empty
+            decay(oldest - from);
+            from = oldest;
+        }
+
+        if (from > lastSealed) {
+            return;
+        }
+
+        long count = 0;
+        double sum = 0;
+        for (long index = from; index <= lastSealed; index++) {
+            accumulator.reset();
+            window.foldBucket(index, accumulator);
+            double transactionRate = accumulator.getCount() / bucketSeconds;
+            double amountRate = accumulator.getSum() / bucketSeconds;
+            for (int i = 0; i < alphas.length; i++) {
+                transactions[i] += alphas[i] * (transactionRate - transactions[i]);
+                amounts[i] += alphas[i] * (amountRate - amounts[i]);
+            }
+            count += accumulator.getCount();
+            sum += accumulator.getSum();
+        }
+
+        double seconds = (lastSealed - from + 1) * bucketSeconds;
+        foldedTo = lastSealed;
+        rates = result((lastSealed + 1) * window.getBucketMillis(), count / seconds, sum / seconds);
+    }
+
+    /**
+     * @return the rates published on the last tick, zeros before the first bucket got sealed, never to be modified
+     * @throws IllegalStateException if the rates are disabled
+     */
+    public RatesResult get() {
+        if (!enabled) {
+            throw new IllegalStateException("Rates are disabled");
+        }
+        return rates;
+    }
+
+    /**
+     * Starts the averages over from zero, for a cleared window.
+     */
+    public synchronized void clear() {
+        Arrays.fill(transactions, 0.0);
+        Arrays.fill(amounts, 0.0);
+        foldedTo = Long.MIN_VALUE;
+        rates = result(0, 0.0, 0.0);
+    }
+
+    private void decay(long buckets) {
+        for (int i = 0; i < alphas.length; i++) {
+            double remaining = Math.pow(1 - alphas[i], buckets);
+            transactions[i] *= remaining;
+            amounts[i] *= remaining;
+        }
+    }
+
+    private RatesResult result(long timestamp, double transactionRate, double amountRate) {
+        RatesResult result = new RatesResult();
+        result.setTimestamp(timestamp);
+        result.setTransactions(new RateResult(transactionRate, transactions[0], transactions[1], transactions[2]));
+        result.setAmount(new RateResult(amountRate, amounts[0], amounts[1], amounts[2]));
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.annotation.Order;
+
+import com.kozanoglu.model.statistics.StatisticPerSecond;
+
+/**
+ * Long retention history of the window, per minute and per hour, kept in off-heap {@link RollupRing}s.
+ * Every bucket is rolled up once on the first tick after it is sealed, i.e. older than the allowed lateness,
+ * writes which land in a bucket after that still count for the window but not for the history.
+ */
+@Order(5)
+public class StatisticsRollup implements TickListener {
+
+    static final long MINUTE_MILLIS = 60_000L;
+    static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    static final int MAX_POINTS = 10_000;
+
+    private final StatisticsWindow window;
+    private final boolean enabled;
+    private final long openBuckets;
+    private final RollupRing minutes;
+    private final RollupRing hours;
+    private final StatisticsAccumulator accumulator = new StatisticsAccumulator();
+    private long rolledTo = Long.MIN_VALUE;
+
+    /**
+     * @param allowedLatenessMillis how long after its end a bucket is still expected to receive writes
+     * @param minutes               number of minutes kept
+     * @param hours                 number of hours kept
+     */
+    public StatisticsRollup(StatisticsWindow window, boolean enabled, long allowedLatenessMillis, int minutes, int hours) {
+        this.window = window;
+        this.enabled = enabled;
+        this.openBuckets = (allowedLatenessMillis + window.getBucketMillis() - 1) / window.getBucketMillis() + 1;
+        this.minutes = enabled ? new RollupRing(MINUTE_MILLIS, minutes) : null;
+        this.hours = enabled ? new RollupRing(HOUR_MILLIS, hours) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onTick(long now) {
+        if (!enabled) {
+            return;
+        }
+
+        long lastSealed = window.bucketIndexOf(now) - openBuckets;
+        // buckets which left the window before they could be rolled up are gone
+        long from = Math.max(rolledTo + 1, window.oldestBucketIndex(now));
+        for (long index = from; index <= lastSealed; index++) {
+            accumulator.reset();
+            window.foldBucket(index, accumulator);
+            if (accumulator.getCount() > 0) {
+                long timestamp = index * window.getBucketMillis();
+                minutes.add(timestamp, accumulator.getCount(), accumulator.getSum(), accumulator.getMin(), accumulator.getMax());
+                hours.add(timestamp, accumulator.getCount(), accumulator.getSum(), accumulator.getMin(), accumulator.getMax());
+            }
+        }
+        rolledTo = Math.max(rolledTo, lastSealed);
+    }
+
+    /**
+     * Aggregates the history between two timestamps into points of the given step, each stamped with its start.
+     * Steps of whole hours are served from the hour ring, steps of whole minutes from the minute ring,
+     * points without any transaction are left out.
+     *
+     * @param from epoch millis, inclusive, aligned down to the step
+     * @param to   epoch millis, exclusive
+     * @param step length of a point, a multiple of a minute
+     * @throws IllegalArgumentException for an empty range, a step which isn't a multiple of a minute or too many points
+     * @throws IllegalStateException    if the rollup is disabled
+     */
+    public List<StatisticPerSecond> range(long from, long to, long step) {
+        if (step <= 0 || step % MINUTE_MILLIS != 0) {
+            throw new IllegalArgumentException(String.format("Step of [%d] ms isn't a multiple of a minute", step));
+        }
+
+        long alignedFrom;
+        long pointCount;
+        try {
+            alignedFrom = Math.multiplyExact(Math.floorDiv(from, step), step);
+            pointCount = (Math.subtractExact(to, alignedFrom) - 1) / step + 1;
+            // the end of the last point has to be representable as well
+            Math.addExact(alignedFrom, Math.multiplyExact(pointCount, step));
+        } catch (ArithmeticException e) {
+            pointCount = Long.MAX_VALUE;
+            alignedFrom = from;
+        }
+
+        if (to <= from || pointCount > MAX_POINTS) {
+            throw new IllegalArgumentException(String.format(
+                    "Range [%d, %d) has to be non empty and have at most [%d] points", from, to, MAX_POINTS));
+        }
+
+        if (!enabled) {
+            throw new IllegalStateException("Rollups are disabled");
+        }
+
+        RollupRing ring = step % HOUR_MILLIS == 0 ? hours : minutes;
+        List<StatisticPerSecond> points = new ArrayList<>();
+        StatisticsAccumulator pointAccumulator = new StatisticsAccumulator();
+        for (long index = 0; index < pointCount; index++) {
+            long start = alignedFrom + index * step;
+            pointAccumulator.reset();
+            ring.foldInto(start, start + step, pointAccumulator);
+            if (pointAccumulator.getCount() > 0) {
+                StatisticPerSecond point = pointAccumulator.writeTo(new StatisticPerSecond());
+                point.setTimestamp(start);
+                points.add(point);
+            }
+        }
+        return points;
+    }
+}
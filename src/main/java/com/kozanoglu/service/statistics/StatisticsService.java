@@ -1,138 +1,313 @@
 package com.kozanoglu.service.statistics;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.kozanoglu.model.statistics.KeyedStatisticsResult;
 import com.kozanoglu.model.statistics.StatisticPerSecond;
 import com.kozanoglu.model.statistics.StatisticsResult;
 import com.kozanoglu.model.statistics.Transaction;
+import com.kozanoglu.util.EventTime;
+import com.kozanoglu.util.TimeSource;
+import com.kozanoglu.util.TimeUtil;
 
 import static com.kozanoglu.util.TimeUtil.getSecondFromTimestamp;
-import static com.kozanoglu.util.TimeUtil.isWithinLastMinute;
 
 @Service
 public class StatisticsService {
 
-    private static final Map<Integer, StatisticPerSecond> STATISTICS = new ConcurrentHashMap<>();
+    private final StatisticsWindow window;
+    private final KeyedStatistics keyedStatistics;
+    private final StatisticsSnapshot snapshot;
+    private final StatisticsRates rates;
+    private final TransactionJournal journal;
+    private final TransactionDeduplicator deduplicator;
+    private final TimeSource clock;
+    private final long maxSkewMillis;
 
     /**
-     * Persists the transaction to a hash map if it's within the last minute.
-     * In order to achieve constant time complexity we keep a concurrent hash map for the last 60 seconds.
-     * We outdate the old transactions and merge the transactions fall into same second at every call.
+     * @param maxSkewMillis how far ahead of now a timestamp may be and still be counted, as happening now
+     */
+    @Autowired
+    public StatisticsService(StatisticsWindow window, KeyedStatistics keyedStatistics, StatisticsSnapshot snapshot,
+                             StatisticsRates rates, TransactionJournal journal, TransactionDeduplicator deduplicator,
+                             TimeSource clock, @Value("${statistics.clock.max_skew_millis}") long maxSkewMillis) {
+        this.window = window;
+        this.keyedStatistics = keyedStatistics;
+        this.snapshot = snapshot;
+        this.rates = rates;
+        this.journal = journal;
+        this.deduplicator = deduplicator;
+        this.clock = clock;
+        this.maxSkewMillis = maxSkewMillis;
+    }
+
+    /**
+     * Persists the transaction to the bucket of its timestamp if it's within the window, and to the window
+     * of its key if it has one. Buckets live in a preallocated ring indexed by bucket index, outdated buckets
+     * are reset lazily by the first write of a newer bucket so persisting runs at constant time without any clean up.
+     * A timestamp slightly ahead of now is counted as happening now, so it never takes the slot of a bucket
+     * which is still within the window. A transaction with an id seen within the window before is dropped.
      *
      * @param transaction transaction dto
+     * @return whether the transaction was accepted, or why not
+     */
+    public IngestOutcome persistTransaction(Transaction transaction) {
+        return persist(transaction.getId(), transaction.getKey(), transaction.getTimestamp(), transaction.getAmount());
+    }
+
+    /**
+     * Primitive variant of {@link #persistTransaction(Transaction)} which doesn't need a transaction dto.
+     * Apart from a bucket per bucket length it allocates nothing.
+     *
+     * @param timestamp epoch milliseconds of the transaction
+     * @param amount    transaction amount
+     */
+    public IngestOutcome persist(long timestamp, double amount) {
+        return persist(null, timestamp, amount);
+    }
+
+    /**
+     * @param key       optional key of the transaction, may be null
+     * @param timestamp epoch milliseconds of the transaction
+     * @param amount    transaction amount
+     */
+    public IngestOutcome persist(String key, long timestamp, double amount) {
+        return persist(null, key, timestamp, amount);
+    }
+
+    /**
+     * @param id        optional id of the transaction, may be null
+     * @param key       optional key of the transaction, may be null
+     * @param timestamp epoch milliseconds of the transaction
+     * @param amount    transaction amount
      */
-    public void persistTransaction(Transaction transaction) {
+    public IngestOutcome persist(String id, String key, long timestamp, double amount) {
+        long now = clock.currentTimeMillis();
+        EventTime eventTime = classify(timestamp, now);
+        switch (eventTime) {
+            case LATE:
+                return IngestOutcome.STALE;
+            case TOO_EARLY:
+                return IngestOutcome.TOO_EARLY;
+            default:
+                break;
+        }
+
+        if (isDuplicate(id, timestamp)) {
+            return IngestOutcome.DUPLICATE;
+        }
+
+        if (eventTime == EventTime.EARLY) {
+            timestamp = now;
+        }
 
-        if (!isWithinLastMinute(transaction.getTimestamp())) {
-            return;
+        window.add(timestamp, amount);
+        journal.append(timestamp, amount);
+        snapshot.onWrite(window.bucketIndexOf(timestamp), now);
+        if (key != null) {
+            keyedStatistics.persist(key, timestamp, amount, now);
         }
+        return IngestOutcome.ACCEPTED;
+    }
 
-        cleanOldTransactions();
+    /**
+     * Checks the id against the ids seen within the window and remembers it, for callers which classify
+     * transactions themselves. To be called for transactions within the window only, with the timestamp as sent.
+     *
+     * @param id optional id of the transaction, a transaction without an id is never a duplicate
+     */
+    public boolean isDuplicate(String id, long timestamp) {
+        return id != null && deduplicator.isDuplicate(id, timestamp);
+    }
 
-        int secondFromTimestamp = getSecondFromTimestamp(transaction.getTimestamp());
+    /**
+     * Persists the transaction to the window of its key only, for transactions whose global statistics
+     * are {@link #merge merged} separately.
+     */
+    public void persistForKey(String key, long timestamp, double amount) {
+        keyedStatistics.persist(key, timestamp, amount, clock.currentTimeMillis());
+    }
 
-        if (STATISTICS.containsKey(secondFromTimestamp)) {
-            mergeStatisticsPerSecond(secondFromTimestamp, transaction);
-        } else {
-            createNewStatisticPerSecond(secondFromTimestamp, transaction);
+    /**
+     * Merges the pre-aggregated transactions of a single bucket, e.g. of a batch, with one bucket update.
+     *
+     * @param bucketIndex index of the bucket all the merged transactions fall into
+     * @return false if the bucket left the window in the meantime and nothing was merged
+     */
+    public boolean merge(long bucketIndex, long count, double sum, double min, double max) {
+        long now = clock.currentTimeMillis();
+        if (bucketIndex < window.oldestBucketIndex(now) || !window.merge(bucketIndex, count, sum, min, max)) {
+            return false;
         }
+
+        snapshot.onWrite(bucketIndex, now);
+        return true;
+    }
+
+    /**
+     * Classifies the timestamp against the configured window and the allowed clock skew, e.g. for callers
+     * which take a single now for a whole batch.
+     */
+    public EventTime classify(long timestamp, long now) {
+        return TimeUtil.classify(timestamp, now, window.getWindowMillis(), maxSkewMillis);
     }
 
     /**
-     * Filters and aggregates last 60 seconds transaction objects
+     * @return now according to the configured time source
+     */
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * Aggregates the buckets of the configured window, the last minute by default.
+     * In snapshot mode this is the result published on the last tick, never to be modified.
      *
      * @return StatisticsResult object
      */
     public StatisticsResult getStatisticsForTheLastMinute() {
-        Double min = STATISTICS.size() == 0 ? 0 : Double.MAX_VALUE;
-        Double max = 0.0;
-        Double totalAmount = 0.0;
-        Double average = 0.0;
-        Integer totalCount = 0;
+        StatisticsResult published = snapshot.get();
+        return published != null ? published : window.aggregate(clock.currentTimeMillis());
+    }
 
-        for (StatisticPerSecond statistic : STATISTICS.values()) {
+    /**
+     * Aggregates the most recent part of the configured window, e.g. the last 5 seconds, in O(log n)
+     * from the buckets sealed by the snapshot plus the buckets still open.
+     *
+     * @param windowMillis length of the sub-window, a multiple of the bucket length up to the window length
+     * @throws IllegalArgumentException for any other length
+     */
+    public StatisticsResult getStatisticsForWindow(long windowMillis) {
+        return snapshot.aggregate(clock.currentTimeMillis(), windowMillis);
+    }
 
-            if (!isWithinLastMinute(statistic.getTimestamp())) {
-                continue;
+    /**
+     * Aggregates the buckets of the configured window together with the values at the given percentiles,
+     * keyed like {@code p50} or {@code p99.9}. Percentiles are approximated from the merged bucket histograms
+     * and kept within the exact min and max.
+     *
+     * @param percentiles percentiles between 0 (exclusive) and 100 (inclusive)
+     * @return StatisticsResult object
+     */
+    public StatisticsResult getStatisticsForTheLastMinute(double[] percentiles) {
+        for (double percentile : percentiles) {
+            if (!(percentile > 0 && percentile <= 100)) {
+                throw new IllegalArgumentException(String.format("Percentile [%s] is not within (0, 100]", percentile));
             }
+        }
 
-            if (statistic.getMin() < min) {
-                min = statistic.getMin();
-            }
+        if (!window.hasPercentiles()) {
+            throw new IllegalStateException("Percentiles are disabled");
+        }
 
-            if (statistic.getMax() > max) {
-                max = statistic.getMax();
-            }
+        long now = clock.currentTimeMillis();
+        StatisticsResult result = window.aggregate(now);
+        double[] values = window.percentiles(now, percentiles);
 
-            totalAmount += statistic.getSum();
-            totalCount += statistic.getCount();
+        Map<String, Double> percentileValues = new LinkedHashMap<>();
+        for (int i = 0; i < percentiles.length; i++) {
+            double value = result.getCount() > 0 ? Math.max(result.getMin(), Math.min(result.getMax(), values[i])) : 0.0;
+            percentileValues.put(percentileKey(percentiles[i]), value);
         }
+        result.setPercentiles(percentileValues);
+        return result;
+    }
 
-        if (totalCount > 0)
-        {
-            average = totalAmount / totalCount;
-        }
+    /**
+     * Exports the non empty buckets of this node's window in the {@link BucketExport} format, for merging by peers.
+     */
+    public byte[] exportBuckets() {
+        return BucketExport.encode(window.snapshot(clock.currentTimeMillis()));
+    }
 
-        StatisticsResult statisticsResult = new StatisticsResult();
-        statisticsResult.setAvg(average);
-        statisticsResult.setCount(totalCount);
-        statisticsResult.setMax(max);
-        statisticsResult.setMin(min);
-        statisticsResult.setSum(totalAmount);
-        return statisticsResult;
+    /**
+     * @return statistics of the window of the key, null if the key has no live window
+     */
+    public StatisticsResult getStatisticsForKey(String key) {
+        return keyedStatistics.getStatistics(key, clock.currentTimeMillis());
     }
 
     /**
-     * Used by test classes to clean the static map before each test run
+     * @return the live keys with the highest sum within the window, highest first
      */
-    public void clearStatistics() {
-        STATISTICS.clear();
+    public List<KeyedStatisticsResult> getTopKeysBySum(int limit) {
+        return keyedStatistics.getTopBySum(limit, clock.currentTimeMillis());
     }
 
     /**
-     * Used by test classes.
+     * @return number of buckets of the window holding at least one transaction
      */
-    Map<Integer, StatisticPerSecond> getStatistics() {
-        HashMap<Integer, StatisticPerSecond> newMap = new HashMap<>();
-        newMap.putAll(STATISTICS);
-        return newMap;
+    public int getOccupiedBuckets() {
+        return window.occupiedBuckets(clock.currentTimeMillis());
     }
 
-    private void mergeStatisticsPerSecond(int second, Transaction transaction) {
+    /**
+     * @return number of buckets a window can touch
+     */
+    public int getBucketCapacity() {
+        return window.getSlots();
+    }
 
-        StatisticPerSecond statistic = STATISTICS.get(second);
+    public int getLiveKeys() {
+        return keyedStatistics.getLiveKeys();
+    }
 
-        statistic.setSum(statistic.getSum() + transaction.getAmount());
-        statistic.setCount(statistic.getCount() + 1);
+    public boolean isDeduplicating() {
+        return deduplicator.isEnabled();
+    }
 
-        if (transaction.getAmount() > statistic.getMax()) {
-            statistic.setMax(transaction.getAmount());
-        }
+    /**
+     * @return false positive rate the id filters are sized for
+     */
+    public double getDeduplicationFalsePositiveRate() {
+        return deduplicator.getFalsePositiveRate();
+    }
 
-        if (transaction.getAmount() < statistic.getMin()) {
-            statistic.setMin(transaction.getAmount());
-        }
+    /**
+     * @return false positive rate of the fullest id filter of the window, estimated from the ids it holds
+     */
+    public double getEstimatedDeduplicationFalsePositiveRate() {
+        return deduplicator.getEstimatedFalsePositiveRate();
     }
 
-    private void createNewStatisticPerSecond(int second, Transaction transaction) {
-        StatisticPerSecond statistic = new StatisticPerSecond();
-        statistic.setTimestamp(transaction.getTimestamp());
-        statistic.setMin(transaction.getAmount());
-        statistic.setMax(transaction.getAmount());
-        statistic.setSum(transaction.getAmount());
-        statistic.setCount(1);
-        STATISTICS.put(second, statistic);
+    /**
+     * Used by test classes to clean the window before each test run
+     */
+    public void clearStatistics() {
+        window.clear();
+        snapshot.clear();
+        rates.clear();
+        keyedStatistics.clear();
+        deduplicator.clear();
+    }
+
+    StatisticsWindow getWindow() {
+        return window;
+    }
+
+    TransactionJournal getJournal() {
+        return journal;
     }
 
     /**
-     * Whenever we persist a new transaction we call this method and remove all the outdated transactions.
-     * Since the map size is can't be bigger than 60 this method runs at constant time.
+     * Used by test classes, keyed by the second of the bucket start.
      */
-    private void cleanOldTransactions() {
-        STATISTICS.entrySet().removeIf(t -> !isWithinLastMinute(t.getValue().getTimestamp()));
+    Map<Integer, StatisticPerSecond> getStatistics() {
+        Map<Integer, StatisticPerSecond> statistics = new HashMap<>();
+        for (StatisticPerSecond statistic : window.snapshot(clock.currentTimeMillis())) {
+            statistics.put(getSecondFromTimestamp(statistic.getTimestamp()), statistic);
+        }
+        return statistics;
+    }
+
+    private static String percentileKey(double percentile) {
+        return percentile == Math.rint(percentile) ? "p" + (long) percentile : "p" + percentile;
     }
 }
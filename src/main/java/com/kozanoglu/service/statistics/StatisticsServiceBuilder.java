@@ -0,0 +1,61 @@
+package com.kozanoglu.service.statistics;
+
+import com.kozanoglu.util.TimeSource;
+
+/**
+ * Builds a {@link StatisticsService} around a window without Spring, e.g. for tests, benchmarks and stress tests.
+ * By default every optional stage is off: no snapshot, rates, journal or deduplication, the system clock,
+ * 10000 keys of which the top 100 are ranked and two seconds of allowed clock skew.
+ */
+public final class StatisticsServiceBuilder {
+
+    private final StatisticsWindow window;
+    private TimeSource clock = TimeSource.SYSTEM;
+    private KeyedStatistics keyedStatistics;
+    private boolean dedup;
+    private int dedupExpectedPerBucket;
+    private double dedupFalsePositiveRate;
+    private long maxSkewMillis = 2000;
+
+    public StatisticsServiceBuilder(StatisticsWindow window) {
+        this.window = window;
+    }
+
+    public StatisticsServiceBuilder clock(TimeSource clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public StatisticsServiceBuilder keyedStatistics(KeyedStatistics keyedStatistics) {
+        this.keyedStatistics = keyedStatistics;
+        return this;
+    }
+
+    /**
+     * Drops transactions sent again with the same id, see {@link TransactionDeduplicator}.
+     */
+    public StatisticsServiceBuilder deduplicate(int expectedPerBucket, double falsePositiveRate) {
+        this.dedup = true;
+        this.dedupExpectedPerBucket = expectedPerBucket;
+        this.dedupFalsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    public StatisticsServiceBuilder maxSkewMillis(long maxSkewMillis) {
+        this.maxSkewMillis = maxSkewMillis;
+        return this;
+    }
+
+    public StatisticsService build() {
+        long windowMillis = window.getWindowMillis();
+        long bucketMillis = window.getBucketMillis();
+        return new StatisticsService(window,
+                keyedStatistics != null ? keyedStatistics : new KeyedStatistics(windowMillis, bucketMillis, 10_000, 100),
+                new StatisticsSnapshot(window, false, 0),
+                new StatisticsRates(window, false, 0),
+                new TransactionJournal(window, false, null, 0, 0, clock),
+                new TransactionDeduplicator(windowMillis, bucketMillis, maxSkewMillis, dedup,
+                        dedupExpectedPerBucket, dedupFalsePositiveRate),
+                clock, maxSkewMillis);
+    }
+}
@@ -0,0 +1,198 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.core.annotation.Order;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+/**
+ * Sealed aggregates of the window, maintained on every tick. If enabled the statistics of the whole window are
+ * also republished as an immutable {@link Totals} on every tick, so readers pay a single volatile read
+ * and are at most one tick behind. Every reader gets a {@link StatisticsResult} of its own to change as it likes.
+ * <p>
+ * Buckets older than the allowed lateness are sealed once into a {@link SegmentTree} over the slots of the window,
+ * updated in place as buckets roll over, so the aggregates of any contiguous sub-window come from O(log n) nodes.
+ * Only the still open buckets are folded from the window. A write which lands in a sealed bucket anyway
+ * marks the snapshot dirty and the next tick reseals the whole window.
+ */
+@Order(0)
+public class StatisticsSnapshot implements TickListener {
+
+    private final StatisticsWindow window;
+    private final boolean enabled;
+    private final long openBuckets;
+    private final int slots;
+
+    // the tree and the range of sealed bucket indexes it holds are guarded by the lock
+    private final StampedLock lock = new StampedLock();
+    private final SegmentTree tree;
+    private long sealedFrom;
+    private long sealedTo = Long.MIN_VALUE;
+
+    private final StatisticsAccumulator sealAccumulator = new StatisticsAccumulator();
+    private volatile boolean dirty = true;
+    private volatile Totals published;
+
+    /**
+     * @param enabled               whether the statistics of the whole window are published on every tick
+     * @param allowedLatenessMillis how long after its end a bucket is still expected to receive writes
+     */
+    public StatisticsSnapshot(StatisticsWindow window, boolean enabled, long allowedLatenessMillis) {
+        this.window = window;
+        this.enabled = enabled;
+        this.openBuckets = (allowedLatenessMillis + window.getBucketMillis() - 1) / window.getBucketMillis() + 1;
+        this.slots = window.getSlots();
+        this.tree = new SegmentTree(slots);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a copy of the statistics published on the last tick, null if disabled or nothing published yet
+     */
+    public StatisticsResult get() {
+        Totals totals = published;
+        return totals != null ? totals.toResult() : null;
+    }
+
+    /**
+     * Called for every write so writes into already sealed buckets get picked up on the next tick.
+     */
+    public void onWrite(long bucketIndex, long now) {
+        if (!dirty && bucketIndex <= window.bucketIndexOf(now) - openBuckets) {
+            dirty = true;
+        }
+    }
+
+    // ticks and clears run one at a time, so a tick running into a clear never publishes what was cleared
+    @Override
+    public synchronized void onTick(long now) {
+        long oldest = window.oldestBucketIndex(now);
+        long firstOpen = window.bucketIndexOf(now) - openBuckets + 1;
+
+        long stamp = lock.writeLock();
+        try {
+            if (dirty || sealedTo < oldest - 1) {
+                dirty = false;
+                tree.clear();
+                sealedFrom = oldest;
+                sealedTo = oldest - 1;
+            }
+
+            // buckets which left the window give their leaves up, unless a newer bucket took the slot already
+            for (long index = sealedFrom; index < oldest; index++) {
+                tree.set(slotOf(index), 0, 0, 0, 0);
+            }
+            sealedFrom = Math.max(sealedFrom, oldest);
+
+            for (long index = sealedTo + 1; index < firstOpen; index++) {
+                sealAccumulator.reset();
+                window.foldBucket(index, sealAccumulator);
+                tree.set(slotOf(index), sealAccumulator.getCount(), sealAccumulator.getSum(),
+                        sealAccumulator.getMin(), sealAccumulator.getMax());
+            }
+            sealedTo = Math.max(sealedTo, firstOpen - 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (enabled) {
+            StatisticsAccumulator accumulator = new StatisticsAccumulator();
+            fold(now, window.getWindowMillis(), accumulator);
+            published = new Totals(accumulator);
+        }
+    }
+
+    /**
+     * Drops the sealed aggregates and the published statistics of a cleared window, the next tick reseals it.
+     */
+    public synchronized void clear() {
+        long stamp = lock.writeLock();
+        try {
+            tree.clear();
+            sealedFrom = 0;
+            sealedTo = Long.MIN_VALUE;
+            dirty = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        published = null;
+    }
+
+    /**
+     * Aggregates the sub-window of the given length ending at the given time from the sealed buckets
+     * and the buckets sealed since the last tick or still open.
+     *
+     * @param windowMillis length of the sub-window, a multiple of the bucket length up to the window length
+     * @throws IllegalArgumentException for any other length
+     */
+    public StatisticsResult aggregate(long now, long windowMillis) {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        fold(now, windowMillis, accumulator);
+        return accumulator.writeTo(new StatisticsResult());
+    }
+
+    private void fold(long now, long windowMillis, StatisticsAccumulator accumulator) {
+        long fromIndex = window.oldestBucketIndex(now, windowMillis);
+        long toIndex = window.bucketIndexOf(now);
+
+        long stamp = lock.readLock();
+        long lastSealed;
+        try {
+            lastSealed = sealedTo;
+            long from = Math.max(fromIndex, sealedFrom);
+            long to = Math.min(toIndex, sealedTo);
+            if (from <= to) {
+                foldSealed(from, to, accumulator);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        for (long index = Math.max(fromIndex, lastSealed + 1); index <= toIndex; index++) {
+            window.foldBucket(index, accumulator);
+        }
+    }
+
+    private void foldSealed(long fromIndex, long toIndex, StatisticsAccumulator accumulator) {
+        int fromSlot = slotOf(fromIndex);
+        int toSlot = slotOf(toIndex);
+        if (fromSlot <= toSlot) {
+            tree.foldInto(fromSlot, toSlot, accumulator);
+        } else {
+            tree.foldInto(fromSlot, slots - 1, accumulator);
+            tree.foldInto(0, toSlot, accumulator);
+        }
+    }
+
+    private int slotOf(long index) {
+        return (int) Math.floorMod(index, (long) slots);
+    }
+
+    /**
+     * Statistics of the whole window as published on a tick, never changed afterwards.
+     */
+    private static final class Totals {
+
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+
+        private Totals(StatisticsAccumulator accumulator) {
+            this.count = accumulator.getCount();
+            this.sum = accumulator.getSum();
+            this.min = accumulator.getMin();
+            this.max = accumulator.getMax();
+        }
+
+        private StatisticsResult toResult() {
+            StatisticsAccumulator accumulator = new StatisticsAccumulator();
+            accumulator.accumulate(count, sum, min, max);
+            return accumulator.writeTo(new StatisticsResult());
+        }
+    }
+}
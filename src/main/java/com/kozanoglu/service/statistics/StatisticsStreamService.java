@@ -0,0 +1,214 @@
+package com.kozanoglu.service.statistics;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Pushes the window statistics to Server-Sent Events subscribers. The statistics are serialized once per tick
+ * and only when they changed, the same frame is then handed to every subscriber.
+ * Every subscriber holds at most one pending frame: a frame which wasn't sent before the next one arrives is replaced,
+ * so slow consumers skip frames instead of piling them up.
+ * <p>
+ * A subscriber whose send is still in flight after the send timeout is dropped on the next tick. The blocked write
+ * can't be interrupted and holds its sender thread until the container's write timeout, so a sender thread is
+ * added for as long as it does and the other subscribers keep the configured number of threads.
+ */
+@Service
+@Order(10)
+public class StatisticsStreamService implements TickListener {
+
+    private static final Log LOGGER = LogFactory.getLog(StatisticsStreamService.class);
+
+    private static final String EVENT_NAME = "statistics";
+
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int STALLED = 2;
+    private static final int CLOSED = 3;
+
+    private final StatisticsService statisticsService;
+    private final ObjectMapper objectMapper;
+    private final long sendTimeoutNanos;
+    private final ThreadPoolExecutor senders;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private volatile String lastFrame;
+
+    /**
+     * @param sendTimeoutMillis how long a frame may take to be written before its subscriber is dropped
+     */
+    @Autowired
+    public StatisticsStreamService(StatisticsService statisticsService, ObjectMapper objectMapper,
+                                   @Value("${statistics.stream.sender_threads}") int senderThreads,
+                                   @Value("${statistics.stream.send_timeout_millis}") long sendTimeoutMillis) {
+        this.statisticsService = statisticsService;
+        this.objectMapper = objectMapper;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Registers a new subscriber which gets the latest frame right away and every changed one after it.
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(0L));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        String frame = lastFrame;
+        if (frame != null) {
+            subscriber.offer(frame);
+        }
+        return emitter;
+    }
+
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void onTick(long now) {
+        if (subscribers.isEmpty()) {
+            lastFrame = null;
+            return;
+        }
+
+        long nanos = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.stall(nanos)) {
+                subscribers.remove(subscriber);
+                resizeSenders(1);
+                LOGGER.warn(String.format("Dropped a statistics subscriber whose send took longer than [%d] ms",
+                        TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos)));
+            }
+        }
+
+        String frame;
+        try {
+            frame = objectMapper.writeValueAsString(statisticsService.getStatisticsForTheLastMinute());
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Couldn't serialize statistics", e);
+            return;
+        }
+
+        if (frame.equals(lastFrame)) {
+            return;
+        }
+
+        lastFrame = frame;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    // a thread more for every stalled send holding one, the maximum goes first when growing and last when shrinking
+    private void resizeSenders(int delta) {
+        synchronized (senders) {
+            if (delta > 0) {
+                senders.setMaximumPoolSize(senders.getMaximumPoolSize() + delta);
+                senders.setCorePoolSize(senders.getCorePoolSize() + delta);
+            } else {
+                senders.setCorePoolSize(senders.getCorePoolSize() + delta);
+                senders.setMaximumPoolSize(senders.getMaximumPoolSize() + delta);
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final AtomicReference<String> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // IDLE, SENDING, STALLED or CLOSED, sendingSince is written before every move to SENDING
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private volatile long sendingSince;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(String frame) {
+            pending.set(frame);
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                String frame;
+                while ((frame = pending.getAndSet(null)) != null) {
+                    sendingSince = System.nanoTime();
+                    if (!state.compareAndSet(IDLE, SENDING)) {
+                        return;
+                    }
+
+                    try {
+                        emitter.send(SseEmitter.event().name(EVENT_NAME).data(frame));
+                    } catch (IOException | IllegalStateException e) {
+                        close(e);
+                        return;
+                    }
+
+                    if (!state.compareAndSet(SENDING, IDLE)) {
+                        close(new TimeoutException("Statistics frame wasn't sent in time"));
+                        return;
+                    }
+                }
+                sending.set(false);
+            } while (pending.get() != null && sending.compareAndSet(false, true));
+        }
+
+        /**
+         * Marks the subscriber stalled if its send is in flight for longer than the send timeout.
+         *
+         * @return true if it was marked, its sender thread is given back once the send returns
+         */
+        private boolean stall(long nanos) {
+            return state.get() == SENDING && nanos - sendingSince > sendTimeoutNanos
+                    && state.compareAndSet(SENDING, STALLED);
+        }
+
+        private void close(Throwable cause) {
+            subscribers.remove(this);
+            if (state.getAndSet(CLOSED) == STALLED) {
+                resizeSenders(-1);
+            }
+            emitter.completeWithError(cause);
+        }
+    }
+}
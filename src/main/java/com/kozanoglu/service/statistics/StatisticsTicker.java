@@ -0,0 +1,42 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.kozanoglu.util.TimeSource;
+
+/**
+ * Single background tick driving every {@link TickListener} bean in their {@code @Order}.
+ * The tick length bounds how stale anything computed on the tick can be.
+ */
+@Component
+public class StatisticsTicker {
+
+    private static final Log LOGGER = LogFactory.getLog(StatisticsTicker.class);
+
+    private final List<TickListener> listeners;
+    private final TimeSource clock;
+
+    @Autowired
+    public StatisticsTicker(List<TickListener> listeners, TimeSource clock) {
+        this.listeners = listeners;
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedRateString = "${statistics.tick_millis}")
+    public void tick() {
+        long now = clock.currentTimeMillis();
+        for (TickListener listener : listeners) {
+            try {
+                listener.onTick(now);
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("Tick listener [%s] failed", listener.getClass().getSimpleName()), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.kozanoglu.model.statistics.StatisticPerSecond;
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.util.TimeUtil;
+
+/**
+ * Fixed size ring of buckets indexed by bucket index (epoch millis divided by the bucket length) modulo the ring size.
+ * Window and bucket length are configurable, e.g. a minute of one second buckets or five minutes of 100 ms buckets,
+ * and reads cost one pass over the buckets whatever the traffic.
+ * Slots are reset lazily: a writer which finds a bucket of an older index in its slot swaps in a fresh one,
+ * so there is no clean up scan and no map entry per bucket. The ring has one slot more than the window
+ * so the oldest bucket that can still hold a transaction of the window never shares a slot with the current one.
+ * <p>
+ * In striped mode a bucket behaves like a {@link java.util.concurrent.atomic.LongAdder}: writers start on a single
+ * base cell and, once they collide on it, spread over padded cells picked by a per-thread probe.
+ * Cells are folded together at read time.
+ * <p>
+ * With percentiles enabled every bucket also carries a fixed size {@link AmountHistogram},
+ * the histograms of the window are merged when percentiles are queried.
+ */
+public class StatisticsWindow {
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final int slots;
+    private final int stripes;
+    private final boolean percentiles;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public StatisticsWindow(long windowMillis, long bucketMillis, boolean striped, boolean percentiles) {
+        if (bucketMillis <= 0 || windowMillis < bucketMillis || windowMillis % bucketMillis != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Window of [%d] ms can't be split into buckets of [%d] ms", windowMillis, bucketMillis));
+        }
+
+        this.windowMillis = windowMillis;
+        this.bucketMillis = bucketMillis;
+        this.slots = (int) (windowMillis / bucketMillis) + 1;
+        this.stripes = striped ? stripesFor(Runtime.getRuntime().availableProcessors()) : 0;
+        this.percentiles = percentiles;
+        this.buckets = new AtomicReferenceArray<>(slots);
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * @return number of slots, i.e. the most buckets a window can touch
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    public boolean isWithinWindow(long timestamp, long now) {
+        return TimeUtil.isWithinWindow(timestamp, now, windowMillis);
+    }
+
+    public long bucketIndexOf(long timestamp) {
+        return TimeUtil.getBucketIndex(timestamp, bucketMillis);
+    }
+
+    public long oldestBucketIndex(long now) {
+        return TimeUtil.getOldestBucketIndexWithinWindow(now, windowMillis, bucketMillis);
+    }
+
+    /**
+     * @return index of the oldest bucket within the sub-window of the given length ending at the given time
+     * @throws IllegalArgumentException unless the length is a multiple of the bucket length up to the window length
+     */
+    long oldestBucketIndex(long now, long subWindowMillis) {
+        if (subWindowMillis <= 0 || subWindowMillis > windowMillis || subWindowMillis % bucketMillis != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Window of [%d] ms isn't made of buckets of [%d] ms within [%d] ms",
+                    subWindowMillis, bucketMillis, windowMillis));
+        }
+        return TimeUtil.getOldestBucketIndexWithinWindow(now, subWindowMillis, bucketMillis);
+    }
+
+    /**
+     * Adds the amount to the bucket of the given timestamp. Amounts of a bucket whose slot is already taken
+     * by a newer bucket are outdated and dropped.
+     */
+    public void add(long timestamp, double amount) {
+        Bucket bucket = bucketFor(bucketIndexOf(timestamp));
+        if (bucket != null) {
+            bucket.merge(1, amount, amount, amount);
+            bucket.record(amount);
+        }
+    }
+
+    /**
+     * Records the amount in the histogram of the given bucket only, for amounts whose sum, min, max and count
+     * are {@link #merge merged} separately.
+     */
+    public void record(long bucketIndex, double amount) {
+        if (percentiles) {
+            Bucket bucket = bucketFor(bucketIndex);
+            if (bucket != null) {
+                bucket.record(amount);
+            }
+        }
+    }
+
+    public boolean hasPercentiles() {
+        return percentiles;
+    }
+
+    /**
+     * Merges already aggregated amounts into the given bucket in one go, e.g. the per-bucket aggregates of a batch.
+     *
+     * @return false if the slot is already taken by a newer bucket and the amounts are dropped
+     */
+    public boolean merge(long bucketIndex, long count, double sum, double min, double max) {
+        Bucket bucket = bucketFor(bucketIndex);
+        if (bucket == null) {
+            return false;
+        }
+
+        bucket.merge(count, sum, min, max);
+        return true;
+    }
+
+    /**
+     * Aggregates the buckets of the window ending at the given time. Runs over the fixed number of slots.
+     */
+    public StatisticsResult aggregate(long now) {
+        return aggregateInto(now, new StatisticsResult());
+    }
+
+    /**
+     * Same as {@link #aggregate(long)} into a given result, e.g. a subclass carrying more fields.
+     */
+    public <T extends StatisticsResult> T aggregateInto(long now, T result) {
+        long fromIndex = oldestBucketIndex(now);
+        long toIndex = bucketIndexOf(now);
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (int slot = 0; slot < slots; slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.index >= fromIndex && bucket.index <= toIndex) {
+                bucket.foldInto(accumulator);
+            }
+        }
+        return accumulator.writeTo(result);
+    }
+
+    /**
+     * Folds a single bucket, nothing if the slot holds another bucket.
+     */
+    void foldBucket(long bucketIndex, StatisticsAccumulator accumulator) {
+        Bucket bucket = buckets.get((int) Math.floorMod(bucketIndex, (long) slots));
+        if (bucket != null && bucket.index == bucketIndex) {
+            bucket.foldInto(accumulator);
+        }
+    }
+
+    /**
+     * Merges the histograms of the window ending at the given time and reads the requested percentiles off them.
+     *
+     * @param percentiles percentiles between 0 (exclusive) and 100 (inclusive)
+     * @return values at the percentiles in the same order, NaN for an empty window or if percentiles are disabled
+     */
+    public double[] percentiles(long now, double[] percentiles) {
+        double[] values = new double[percentiles.length];
+        long[] counts = new long[AmountHistogram.SIZE];
+        if (this.percentiles) {
+            long fromIndex = oldestBucketIndex(now);
+            long toIndex = bucketIndexOf(now);
+            for (int slot = 0; slot < slots; slot++) {
+                Bucket bucket = buckets.get(slot);
+                if (bucket != null && bucket.index >= fromIndex && bucket.index <= toIndex) {
+                    bucket.histogram.foldInto(counts);
+                }
+            }
+        }
+
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = AmountHistogram.valueAtPercentile(counts, percentiles[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Counts the buckets of the window ending at the given time which hold at least one amount.
+     */
+    public int occupiedBuckets(long now) {
+        long fromIndex = oldestBucketIndex(now);
+        long toIndex = bucketIndexOf(now);
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        int occupied = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket == null || bucket.index < fromIndex || bucket.index > toIndex) {
+                continue;
+            }
+
+            accumulator.reset();
+            bucket.foldInto(accumulator);
+            if (accumulator.getCount() > 0) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * Copies the non empty buckets of the window ending at the given time, stamped with their start time.
+     */
+    public List<StatisticPerSecond> snapshot(long now) {
+        long fromIndex = oldestBucketIndex(now);
+        long toIndex = bucketIndexOf(now);
+        List<StatisticPerSecond> snapshot = new ArrayList<>();
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (int slot = 0; slot < slots; slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket == null || bucket.index < fromIndex || bucket.index > toIndex) {
+                continue;
+            }
+
+            accumulator.reset();
+            bucket.foldInto(accumulator);
+            if (accumulator.getCount() > 0) {
+                StatisticPerSecond statistic = accumulator.writeTo(new StatisticPerSecond());
+                statistic.setTimestamp(bucket.index * bucketMillis);
+                snapshot.add(statistic);
+            }
+        }
+        return snapshot;
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < slots; slot++) {
+            buckets.set(slot, null);
+        }
+    }
+
+    private Bucket bucketFor(long index) {
+        int slot = (int) Math.floorMod(index, (long) slots);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.index == index) {
+                return bucket;
+            }
+
+            if (bucket != null && bucket.index > index) {
+                return null;
+            }
+
+            Bucket fresh = new Bucket(index, stripes, percentiles);
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static int stripesFor(int processors) {
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * Aggregates of a single bucket, a base cell plus the lazily created stripes in striped mode.
+     */
+    private static final class Bucket {
+
+        private static final AtomicReferenceFieldUpdater<Bucket, Cell[]> CELLS =
+                AtomicReferenceFieldUpdater.newUpdater(Bucket.class, Cell[].class, "cells");
+
+        private final long index;
+        private final int stripes;
+        private final Cell base = new Cell();
+        private final AmountHistogram histogram;
+        private volatile Cell[] cells;
+
+        private Bucket(long index, int stripes, boolean percentiles) {
+            this.index = index;
+            this.stripes = stripes;
+            this.histogram = percentiles ? new AmountHistogram() : null;
+        }
+
+        private void record(double amount) {
+            if (histogram != null) {
+                histogram.record(amount);
+            }
+        }
+
+        private void merge(long count, double sum, double min, double max) {
+            Cell[] stripedCells = cells;
+            if (stripedCells == null) {
+                if (base.tryMerge(count, sum, min, max)) {
+                    return;
+                }
+
+                if (stripes == 0) {
+                    base.merge(count, sum, min, max);
+                    return;
+                }
+
+                stripedCells = createCells();
+            }
+
+            int probe = Probe.current();
+            while (!stripedCells[probe & (stripedCells.length - 1)].tryMerge(count, sum, min, max)) {
+                probe = Probe.advance();
+            }
+        }
+
+        private void foldInto(StatisticsAccumulator accumulator) {
+            base.foldInto(accumulator);
+            Cell[] stripedCells = cells;
+            if (stripedCells != null) {
+                for (Cell cell : stripedCells) {
+                    cell.foldInto(accumulator);
+                }
+            }
+        }
+
+        private Cell[] createCells() {
+            Cell[] stripedCells = new Cell[stripes];
+            for (int i = 0; i < stripes; i++) {
+                stripedCells[i] = new PaddedCell();
+            }
+            return CELLS.compareAndSet(this, null, stripedCells) ? stripedCells : cells;
+        }
+    }
+
+    /**
+     * Sum, min, max and count of a share of the writes. Every field is updated with its own compare and set,
+     * so concurrent writers never lose an update and never wait for each other. A writer first claims its amounts
+     * in the started count, then updates sum, min and max and adds them to the count last. A reader which finds
+     * the started count equal to the count it read before sum, min and max saw no writer in between, otherwise
+     * it reads again, so it never sees a transaction in part.
+     */
+    private static class Cell {
+
+        private static final AtomicLongFieldUpdater<Cell> STARTED = AtomicLongFieldUpdater.newUpdater(Cell.class, "started");
+        private static final AtomicLongFieldUpdater<Cell> COUNT = AtomicLongFieldUpdater.newUpdater(Cell.class, "count");
+        private static final AtomicLongFieldUpdater<Cell> SUM = AtomicLongFieldUpdater.newUpdater(Cell.class, "sum");
+        private static final AtomicLongFieldUpdater<Cell> MIN = AtomicLongFieldUpdater.newUpdater(Cell.class, "min");
+        private static final AtomicLongFieldUpdater<Cell> MAX = AtomicLongFieldUpdater.newUpdater(Cell.class, "max");
+        // reads retried in a row before the reader yields to a writer which may have been preempted
+        private static final int SPINS = 64;
+
+        private volatile long started;
+        private volatile long count;
+        // sum, min and max hold the raw long bits of doubles
+        private volatile long sum = Double.doubleToRawLongBits(0.0);
+        private volatile long min = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        private volatile long max = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+        private void merge(long count, double sum, double min, double max) {
+            while (!tryMerge(count, sum, min, max)) {
+                // another writer claimed in between, i.e. made progress, retry
+            }
+        }
+
+        /**
+         * @return false if another writer claimed the cell in between, nothing has been written then
+         */
+        private boolean tryMerge(long count, double sum, double min, double max) {
+            long claimed = started;
+            if (!STARTED.compareAndSet(this, claimed, claimed + count)) {
+                return false;
+            }
+
+            long current;
+            do {
+                current = this.sum;
+            } while (!SUM.compareAndSet(this, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + sum)));
+
+            do {
+                current = this.min;
+            } while (min < Double.longBitsToDouble(current) && !MIN.compareAndSet(this, current, Double.doubleToRawLongBits(min)));
+
+            do {
+                current = this.max;
+            } while (max > Double.longBitsToDouble(current) && !MAX.compareAndSet(this, current, Double.doubleToRawLongBits(max)));
+
+            COUNT.addAndGet(this, count);
+            return true;
+        }
+
+        private void foldInto(StatisticsAccumulator accumulator) {
+            long cellCount;
+            long cellSum;
+            long cellMin;
+            long cellMax;
+            int spins = 0;
+            while (true) {
+                cellCount = count;
+                cellSum = sum;
+                cellMin = min;
+                cellMax = max;
+                if (started == cellCount) {
+                    break;
+                }
+
+                if (++spins == SPINS) {
+                    spins = 0;
+                    Thread.yield();
+                }
+            }
+
+            if (cellCount > 0) {
+                accumulator.accumulate(cellCount, Double.longBitsToDouble(cellSum),
+                        Double.longBitsToDouble(cellMin), Double.longBitsToDouble(cellMax));
+            }
+        }
+    }
+
+    /**
+     * Keeps stripes of neighbouring cells on separate cache lines.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedCell extends Cell {
+        private long p0, p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    /**
+     * Per-thread hash picking the stripe, moved on to another stripe whenever the thread collides.
+     */
+    private static final class Probe {
+
+        private static final ThreadLocal<Probe> PROBE = ThreadLocal.withInitial(Probe::new);
+
+        private int value = mix((int) Thread.currentThread().getId());
+
+        private static int current() {
+            return PROBE.get().value;
+        }
+
+        private static int advance() {
+            Probe probe = PROBE.get();
+            int value = probe.value;
+            value ^= value << 13;
+            value ^= value >>> 17;
+            value ^= value << 5;
+            probe.value = value;
+            return value;
+        }
+
+        private static int mix(int seed) {
+            int value = seed * 0x9E3779B9;
+            return value == 0 ? 1 : value;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.kozanoglu.service.statistics;
+
+/**
+ * Work done on every tick of the {@link StatisticsTicker} instead of per transaction or per read.
+ */
+public interface TickListener {
+
+    /**
+     * @param now epoch milliseconds of the tick
+     */
+    void onTick(long now);
+}
@@ -0,0 +1,212 @@
+package com.kozanoglu.service.statistics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.model.statistics.BatchResult;
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.util.EventTime;
+
+@Service
+public class TransactionBatchService {
+
+    private static final int RECORDS_PER_READ = 1024;
+
+    private final StatisticsService statisticsService;
+    private final JsonFactory jsonFactory;
+    // batches of a thread run one after the other, so each thread reuses the arrays of a single aggregator
+    private final ThreadLocal<BatchAggregator> aggregators;
+
+    @Autowired
+    public TransactionBatchService(StatisticsService statisticsService, ObjectMapper objectMapper) {
+        this.statisticsService = statisticsService;
+        this.jsonFactory = objectMapper.getFactory();
+        this.aggregators = ThreadLocal.withInitial(() -> new BatchAggregator(statisticsService));
+    }
+
+    /**
+     * Streams transactions out of either a json array or newline delimited json objects without materializing them.
+     * Accepted transactions are pre-aggregated per bucket and merged into the statistics once per bucket.
+     * All transactions of a batch are classified against the same now, taken when the batch starts.
+     * A malformed body stops the reading, it is reported as one more invalid entry and whatever was read before is kept.
+     * Transactions with an id seen within the window before, also earlier within the batch, are counted as duplicates.
+     * Transactions whose bucket left the window while the batch was still read are counted as stale.
+     *
+     * @param body json array or ndjson stream of transactions
+     * @return accepted, stale, duplicate and invalid counts of the batch
+     */
+    public BatchResult persistTransactions(InputStream body) throws IOException {
+        BatchResult result = new BatchResult();
+        BatchAggregator aggregator = aggregators.get();
+        long now = statisticsService.currentTimeMillis();
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token == JsonToken.START_OBJECT) {
+                    readTransaction(parser, aggregator, result, now);
+                } else {
+                    parser.skipChildren();
+                    result.setInvalid(result.getInvalid() + 1);
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            result.setInvalid(result.getInvalid() + 1);
+        } finally {
+            flush(aggregator, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decodes a body of {@link TransactionRecords} straight from the stream through a small reused buffer,
+     * without any intermediate objects per transaction. Otherwise the same as {@link #persistTransactions}:
+     * records are classified against one now and merged per bucket, a trailing incomplete record
+     * or a non-finite amount counts as invalid.
+     *
+     * @param body concatenated 16 byte records
+     * @return accepted, stale and invalid counts of the batch
+     */
+    public BatchResult persistRecords(InputStream body) throws IOException {
+        BatchResult result = new BatchResult();
+        BatchAggregator aggregator = aggregators.get();
+        long now = statisticsService.currentTimeMillis();
+        byte[] chunk = new byte[RECORDS_PER_READ * TransactionRecords.RECORD_BYTES];
+        ByteBuffer records = ByteBuffer.wrap(chunk);
+        int filled = 0;
+
+        try {
+            int read;
+            while ((read = body.read(chunk, filled, chunk.length - filled)) != -1) {
+                filled += read;
+                int complete = filled - filled % TransactionRecords.RECORD_BYTES;
+                readRecords(records, 0, complete, aggregator, result, now);
+
+                // a record split between two reads is completed by the next one
+                System.arraycopy(chunk, complete, chunk, 0, filled - complete);
+                filled -= complete;
+            }
+
+            if (filled > 0) {
+                result.setInvalid(result.getInvalid() + 1);
+            }
+        } finally {
+            flush(aggregator, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Same as {@link #persistRecords(InputStream)} for the records between the position and the limit
+     * of a buffer, e.g. a direct buffer read off a socket. The buffer's position and limit are left as they are.
+     */
+    public BatchResult persistRecords(ByteBuffer records) {
+        BatchResult result = new BatchResult();
+        BatchAggregator aggregator = aggregators.get();
+        int complete = records.remaining() - records.remaining() % TransactionRecords.RECORD_BYTES;
+
+        try {
+            readRecords(records, records.position(), records.position() + complete, aggregator, result,
+                    statisticsService.currentTimeMillis());
+            if (complete < records.remaining()) {
+                result.setInvalid(result.getInvalid() + 1);
+            }
+        } finally {
+            flush(aggregator, result);
+        }
+
+        return result;
+    }
+
+    private static void flush(BatchAggregator aggregator, BatchResult result) {
+        int dropped = aggregator.flush();
+        result.setAccepted(result.getAccepted() - dropped);
+        result.setStale(result.getStale() + dropped);
+    }
+
+    private void readRecords(ByteBuffer records, int from, int to, BatchAggregator aggregator, BatchResult result,
+                             long now) {
+        for (int offset = from; offset < to; offset += TransactionRecords.RECORD_BYTES) {
+            double amount = records.getDouble(offset + TransactionRecords.AMOUNT_OFFSET);
+            if (Double.isFinite(amount)) {
+                accept(records.getLong(offset + TransactionRecords.TIMESTAMP_OFFSET), amount, null, null,
+                        aggregator, result, now);
+            } else {
+                result.setInvalid(result.getInvalid() + 1);
+            }
+        }
+    }
+
+    private void readTransaction(JsonParser parser, BatchAggregator aggregator, BatchResult result, long now)
+            throws IOException {
+        boolean hasAmount = false;
+        boolean hasTimestamp = false;
+        double amount = 0;
+        long timestamp = 0;
+        String key = null;
+        String id = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("amount".equals(field) && value.isNumeric()) {
+                amount = parser.getDoubleValue();
+                hasAmount = true;
+            } else if ("timestamp".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                timestamp = parser.getLongValue();
+                hasTimestamp = true;
+            } else if ("key".equals(field) && value == JsonToken.VALUE_STRING) {
+                key = parser.getText();
+            } else if ("id".equals(field) && (value == JsonToken.VALUE_STRING || value.isNumeric())) {
+                id = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!hasAmount || !hasTimestamp) {
+            result.setInvalid(result.getInvalid() + 1);
+            return;
+        }
+
+        accept(timestamp, amount, id, key, aggregator, result, now);
+    }
+
+    private void accept(long timestamp, double amount, String id, String key, BatchAggregator aggregator,
+                        BatchResult result, long now) {
+        EventTime eventTime = statisticsService.classify(timestamp, now);
+        if (eventTime == EventTime.LATE) {
+            result.setStale(result.getStale() + 1);
+        } else if (eventTime == EventTime.TOO_EARLY) {
+            result.setTooEarly(result.getTooEarly() + 1);
+        } else if (statisticsService.isDuplicate(id, timestamp)) {
+            result.setDuplicate(result.getDuplicate() + 1);
+        } else {
+            if (eventTime == EventTime.EARLY) {
+                timestamp = now;
+            }
+            aggregator.add(timestamp, amount);
+            if (key != null) {
+                statisticsService.persistForKey(key, timestamp, amount);
+            }
+            result.setAccepted(result.getAccepted() + 1);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.kozanoglu.util.TimeUtil;
+
+/**
+ * Remembers the ids of the transactions within the window, so a retried transaction is counted once.
+ * Every bucket has a Bloom filter of its own, sized for the expected ids per bucket and the configured false positive
+ * rate, and a transaction is looked up in the filter of its timestamp only, in constant time. Filters live in a ring
+ * covering the window plus the allowed clock skew and are replaced lazily like the buckets of the
+ * {@link StatisticsWindow}, so memory stays fixed and an id is forgotten once its bucket left the window.
+ * <p>
+ * A false positive drops a transaction which was never seen. Two requests of the same id arriving at the very
+ * same time may both pass, a retry after a timeout never does.
+ */
+public class TransactionDeduplicator {
+
+    private static final Log LOGGER = LogFactory.getLog(TransactionDeduplicator.class);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int slots;
+    private final long bits;
+    private final int hashes;
+    private final double falsePositiveRate;
+    private final AtomicReferenceArray<Filter> filters;
+
+    /**
+     * @param expectedPerBucket transactions with an id expected per bucket, more raise the false positive rate
+     * @param falsePositiveRate share of new ids taken for duplicates at the expected ids per bucket, between 0 and 1
+     */
+    public TransactionDeduplicator(long windowMillis, long bucketMillis, long maxSkewMillis, boolean enabled,
+                                   int expectedPerBucket, double falsePositiveRate) {
+        if (enabled && (expectedPerBucket <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1))) {
+            throw new IllegalArgumentException(String.format(
+                    "Can't size filters for [%d] ids per bucket at a false positive rate of [%s]",
+                    expectedPerBucket, falsePositiveRate));
+        }
+
+        this.enabled = enabled;
+        this.bucketMillis = bucketMillis;
+        this.falsePositiveRate = falsePositiveRate;
+        // buckets from the oldest one of the window up to the one of the furthest timestamp still accepted
+        this.slots = enabled ? (int) (windowMillis / bucketMillis + (maxSkewMillis + bucketMillis - 1) / bucketMillis + 1) : 0;
+        long optimalBits = (long) Math.ceil(-expectedPerBucket * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = enabled ? (optimalBits + 63) / 64 * 64 : 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedPerBucket * Math.log(2)));
+        this.filters = new AtomicReferenceArray<>(slots);
+
+        if (enabled) {
+            LOGGER.info(String.format("Deduplicating transaction ids in %d filters of %d bits and %d hashes, %d KB in total,"
+                            + " at a false positive rate of %s for %d ids per bucket",
+                    slots, bits, hashes, slots * bits / 8 / 1024, falsePositiveRate, expectedPerBucket));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Looks the id up in the filter of the bucket of the timestamp and adds it if it isn't there yet.
+     *
+     * @param timestamp timestamp of the transaction as sent, every retry of a transaction carries the same
+     * @return true if the id was seen within the bucket before, or looks like it
+     */
+    public boolean isDuplicate(String id, long timestamp) {
+        if (!enabled) {
+            return false;
+        }
+
+        Filter filter = filterFor(TimeUtil.getBucketIndex(timestamp, bucketMillis));
+        if (filter == null) {
+            return false;
+        }
+
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * FNV_PRIME;
+        }
+        long first = mix(hash);
+        // odd, so the probes of an id never repeat before all bits were probed
+        long second = mix(first ^ FNV_PRIME) | 1;
+        return !filter.add(first, second, bits, hashes);
+    }
+
+    /**
+     * @return the false positive rate the filters are sized for
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Estimates the false positive rate of the fullest filter of the window from the ids it holds,
+     * above the configured rate once buckets get more ids than expected.
+     */
+    public double getEstimatedFalsePositiveRate() {
+        long fullest = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            Filter filter = filters.get(slot);
+            if (filter != null) {
+                fullest = Math.max(fullest, filter.ids.sum());
+            }
+        }
+        return Math.pow(1 - Math.exp(-(double) hashes * fullest / bits), hashes);
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < slots; slot++) {
+            filters.set(slot, null);
+        }
+    }
+
+    private Filter filterFor(long index) {
+        int slot = (int) Math.floorMod(index, (long) slots);
+        while (true) {
+            Filter filter = filters.get(slot);
+            if (filter != null && filter.index == index) {
+                return filter;
+            }
+
+            if (filter != null && filter.index > index) {
+                return null;
+            }
+
+            Filter fresh = new Filter(index, bits);
+            if (filters.compareAndSet(slot, filter, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    // murmur3 finalizer, spreads the bits of the hash over all 64 bits
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Bloom filter of a single bucket, bits are set with compare and set so concurrent writers never lose one.
+     */
+    private static final class Filter {
+
+        private final long index;
+        private final AtomicLongArray words;
+        private final LongAdder ids = new LongAdder();
+
+        private Filter(long index, long bits) {
+            this.index = index;
+            this.words = new AtomicLongArray((int) (bits / 64));
+        }
+
+        /**
+         * Sets the bits of the id, probed by double hashing.
+         *
+         * @return true if any bit was not set before, i.e. the id is new
+         */
+        private boolean add(long first, long second, long bits, int hashes) {
+            boolean added = false;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(first + i * second, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = words.get(word)) & mask) == 0) {
+                    if (words.compareAndSet(word, current, current | mask)) {
+                        added = true;
+                        break;
+                    }
+                }
+            }
+
+            if (added) {
+                ids.increment();
+            }
+            return added;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.kozanoglu.service.statistics;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.kozanoglu.util.TimeSource;
+
+/**
+ * Append-only journal of accepted transactions, replayed into the window on startup so a restart doesn't reset
+ * the statistics. Records are fixed 16 bytes, the epoch millis followed by the amount, written into memory-mapped
+ * segment files of a fixed size. An append claims its offset with a single atomic add and writes the two values
+ * straight into the mapping, the timestamp last so a record without one is treated as never written.
+ * <p>
+ * Full segments are rolled over to a new file and deleted once everything they hold has left the window.
+ * The next segment is created and mapped ahead on the background thread, so a rollover only swaps it in.
+ * Mapped pages reach the disk through the OS, forcing them is batched on a fixed interval (group commit),
+ * so a crash of the process loses nothing and a crash of the machine loses at most one interval.
+ * Keys aren't journaled, keyed windows start empty after a restart.
+ */
+public class TransactionJournal {
+
+    private static final Log LOGGER = LogFactory.getLog(TransactionJournal.class);
+
+    static final int RECORD_BYTES = 16;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final StatisticsWindow window;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long fsyncMillis;
+    private final TimeSource clock;
+
+    // closed segments oldest first, the segment created ahead and the sequence of the next one, guarded by this
+    private final Deque<Segment> closed = new ArrayDeque<>();
+    private Segment next;
+    private long nextSequence;
+    private volatile Segment active;
+    // forces segments to the disk and creates the next one ahead
+    private ScheduledExecutorService syncer;
+
+    /**
+     * @param segmentBytes size of a segment file, a multiple of the record size
+     * @param fsyncMillis  interval of forcing written records to the disk, 0 leaves it to the OS
+     * @param clock        now of replays and rollovers, the same the window is written with
+     */
+    public TransactionJournal(StatisticsWindow window, boolean enabled, Path directory, int segmentBytes, long fsyncMillis,
+                              TimeSource clock) {
+        if (enabled && (segmentBytes < RECORD_BYTES || segmentBytes % RECORD_BYTES != 0)) {
+            throw new IllegalArgumentException(String.format(
+                    "Journal segment of [%d] bytes can't be split into records of [%d] bytes", segmentBytes, RECORD_BYTES));
+        }
+
+        this.window = window;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncMillis = fsyncMillis;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replays the segments left by the previous run into the window and opens a fresh segment for appends.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+        long now = clock.currentTimeMillis();
+        long replayed = 0;
+        for (Path path : listSegments()) {
+            replayed += replay(path, now);
+        }
+        LOGGER.info(String.format("Replayed [%d] journaled transactions from [%s]", replayed, directory));
+
+        active = createSegment(nextSequence++);
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.execute(this::createNext);
+        if (fsyncMillis > 0) {
+            syncer.scheduleAtFixedRate(this::sync, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends an accepted transaction. Costs an atomic add and two stores into the mapping,
+     * a writer which finds the segment full rolls it over.
+     */
+    public void append(long timestamp, double amount) {
+        if (!enabled) {
+            return;
+        }
+
+        while (true) {
+            Segment segment = active;
+            int offset = segment.claim();
+            if (offset >= 0) {
+                segment.write(offset, timestamp, amount);
+                return;
+            }
+            rollover(segment);
+        }
+    }
+
+    /**
+     * Forces the written records of the active segment and of segments closed since the last sync to the disk.
+     * A closed segment counts as synced, and may be deleted, only once it has been forced.
+     */
+    public void sync() {
+        List<Segment> unsynced = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : closed) {
+                if (!segment.synced) {
+                    unsynced.add(segment);
+                }
+            }
+        }
+
+        try {
+            for (Segment segment : unsynced) {
+                segment.buffer.force();
+                synchronized (this) {
+                    segment.synced = true;
+                }
+            }
+            Segment segment = active;
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Journal sync failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+
+        if (syncer != null) {
+            syncer.shutdownNow();
+            try {
+                // a segment created ahead in the meantime is deleted below, an interrupted one deletes itself
+                syncer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+
+        Segment unused;
+        synchronized (this) {
+            unused = next;
+            next = null;
+        }
+        if (unused != null) {
+            delete(unused.path);
+        }
+    }
+
+    private synchronized void rollover(Segment full) {
+        if (active != full) {
+            return;
+        }
+
+        long now = clock.currentTimeMillis();
+        full.closedAt = now;
+        full.synced = fsyncMillis <= 0;
+        closed.addLast(full);
+        if (next != null) {
+            active = next;
+            next = null;
+        } else {
+            // the background thread didn't create the next segment in time
+            try {
+                active = createSegment(nextSequence++);
+            } catch (IOException e) {
+                throw new IllegalStateException("Journal segment can't be created in " + directory, e);
+            }
+        }
+        try {
+            syncer.execute(this::createNext);
+        } catch (RejectedExecutionException e) {
+            // closing
+        }
+
+        while (!closed.isEmpty() && closed.peekFirst().synced && closed.peekFirst().closedAt <= now - window.getWindowMillis()) {
+            delete(closed.pollFirst().path);
+        }
+    }
+
+    private long replay(Path path, long now) throws IOException {
+        MappedByteBuffer buffer = map(path, FileChannel.MapMode.READ_ONLY, Files.size(path));
+        long replayed = 0;
+        boolean live = false;
+        for (int offset = 0; offset + RECORD_BYTES <= buffer.capacity(); offset += RECORD_BYTES) {
+            long timestamp = buffer.getLong(offset);
+            if (timestamp != 0 && window.isWithinWindow(timestamp, now)) {
+                window.add(timestamp, buffer.getDouble(offset + 8));
+                replayed++;
+                live = true;
+            }
+        }
+
+        nextSequence = Math.max(nextSequence, sequenceOf(path) + 1);
+        if (live) {
+            Segment segment = new Segment(path, buffer);
+            segment.closedAt = now;
+            segment.synced = true;
+            closed.addLast(segment);
+        } else {
+            delete(path);
+        }
+        return replayed;
+    }
+
+    /**
+     * Creates the segment the next rollover swaps in, on the background thread.
+     */
+    private void createNext() {
+        long sequence;
+        synchronized (this) {
+            if (next != null) {
+                return;
+            }
+            sequence = nextSequence++;
+        }
+
+        try {
+            Segment segment = createSegment(sequence);
+            // fault the pages in now instead of on the first appends
+            segment.buffer.load();
+            synchronized (this) {
+                next = segment;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Next journal segment can't be created in " + directory, e);
+        }
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        try {
+            return new Segment(path, map(path, FileChannel.MapMode.READ_WRITE, segmentBytes));
+        } catch (IOException e) {
+            // e.g. the channel was closed by interrupting the background thread after the file was created
+            delete(path);
+            throw e;
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // zero padded sequences sort by name
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Journal segment [%s] can't be deleted", path), e);
+        }
+    }
+
+    /**
+     * A mapped segment file. Writers claim disjoint records, absolute puts on the shared buffer don't touch its position.
+     */
+    private static final class Segment {
+
+        private static final AtomicIntegerFieldUpdater<Segment> POSITION =
+                AtomicIntegerFieldUpdater.newUpdater(Segment.class, "position");
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private volatile int position;
+        private long closedAt;
+        private boolean synced;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return offset of the claimed record, -1 if the segment is full
+         */
+        private int claim() {
+            // a full segment is replaced right away, so the position can't grow far beyond the capacity
+            int offset = POSITION.getAndAdd(this, RECORD_BYTES);
+            return offset >= 0 && offset <= buffer.capacity() - RECORD_BYTES ? offset : -1;
+        }
+
+        private void write(int offset, long timestamp, double amount) {
+            buffer.putDouble(offset + 8, amount);
+            buffer.putLong(offset, timestamp);
+        }
+    }
+}
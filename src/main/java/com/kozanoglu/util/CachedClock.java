@@ -0,0 +1,53 @@
+package com.kozanoglu.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coarse clock read from a volatile field which a background thread refreshes at a fixed resolution,
+ * so reading the time on the hot path is a plain memory read. It never goes backwards, a wall clock set back
+ * holds it until the wall clock catches up again.
+ */
+public class CachedClock implements TimeSource {
+
+    private final long resolutionNanos;
+    private volatile long now = System.currentTimeMillis();
+    private volatile boolean running;
+    private Thread ticker;
+
+    public CachedClock(long resolutionMillis) {
+        this.resolutionNanos = TimeUnit.MILLISECONDS.toNanos(resolutionMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        ticker = new Thread(() -> {
+            while (running) {
+                long wall = System.currentTimeMillis();
+                if (wall > now) {
+                    now = wall;
+                }
+                LockSupport.parkNanos(resolutionNanos);
+            }
+        }, "cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public synchronized void close() {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+            ticker = null;
+        }
+    }
+}
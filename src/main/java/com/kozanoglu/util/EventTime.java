@@ -0,0 +1,16 @@
+package com.kozanoglu.util;
+
+/**
+ * Where an event timestamp falls relative to the window ending now.
+ */
+public enum EventTime {
+
+    /** Older than the window, it can't change the statistics any more. */
+    LATE,
+    /** Within the window and not ahead of now. */
+    ON_TIME,
+    /** Ahead of now by no more than the allowed clock skew, it's counted as happening now. */
+    EARLY,
+    /** Ahead of now by more than the allowed clock skew. */
+    TOO_EARLY
+}
@@ -0,0 +1,11 @@
+package com.kozanoglu.util;
+
+/**
+ * Source of the current time in epoch millis, injected wherever "now" is needed so it can be cached or fixed in tests.
+ */
+public interface TimeSource {
+
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
@@ -1,20 +1,75 @@
 package com.kozanoglu.util;
 
-import java.util.Calendar;
-import java.util.Date;
-
 public class TimeUtil {
 
-    private static final int MILLISECONDS = 60000;
+    public static boolean isWithinWindow(long timestamp, long now, long windowMillis) {
+        return (now - timestamp) < windowMillis;
+    }
+
+    /**
+     * Classifies an event timestamp against the watermark of the window, i.e. its oldest timestamp,
+     * and against now plus the allowed clock skew of the producers.
+     */
+    public static EventTime classify(long timestamp, long now, long windowMillis, long maxSkewMillis) {
+        if (timestamp > now) {
+            return timestamp - now <= maxSkewMillis ? EventTime.EARLY : EventTime.TOO_EARLY;
+        }
+        return isWithinWindow(timestamp, now, windowMillis) ? EventTime.ON_TIME : EventTime.LATE;
+    }
+
+    /**
+     * Plain arithmetic on the epoch second, equal to {@code Calendar.SECOND} for any zone offset in whole minutes
+     * without allocating a {@code Date} and a {@code Calendar} per call.
+     */
+    public static int getSecondFromTimestamp(long timestamp) {
+        return (int) Math.floorMod(getBucketIndex(timestamp, 1000L), 60L);
+    }
+
+    /**
+     * Parses a duration like {@code 500ms}, {@code 5s} or {@code 2m}.
+     *
+     * @throws IllegalArgumentException if it isn't a positive number of one of these units
+     */
+    public static long parseDurationMillis(String duration) {
+        String value = duration.trim();
+        long unit;
+        if (value.endsWith("ms")) {
+            unit = 1L;
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            unit = 1000L;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = 60_000L;
+            value = value.substring(0, value.length() - 1);
+        } else {
+            throw new IllegalArgumentException(String.format("Duration [%s] has no unit of ms, s or m", duration));
+        }
+
+        long amount;
+        try {
+            amount = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Duration [%s] isn't a number", duration), e);
+        }
+
+        if (amount <= 0) {
+            throw new IllegalArgumentException(String.format("Duration [%s] isn't positive", duration));
+        }
+        return amount * unit;
+    }
 
-    public static boolean isWithinLastMinute(Long timestamp) {
-        return (System.currentTimeMillis() - timestamp) < MILLISECONDS;
+    /**
+     * @return the index of the bucket the timestamp falls into, counted in buckets since the epoch
+     */
+    public static long getBucketIndex(long timestamp, long bucketMillis) {
+        return Math.floorDiv(timestamp, bucketMillis);
     }
 
-    public static int getSecondFromTimestamp(Long timestamp) {
-        Date date = new Date(timestamp);
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        return calendar.get(Calendar.SECOND);
+    /**
+     * @return the index of the bucket of the oldest timestamp which is still within the window
+     */
+    public static long getOldestBucketIndexWithinWindow(long now, long windowMillis, long bucketMillis) {
+        return getBucketIndex(now - windowMillis + 1, bucketMillis);
     }
 }
@@ -0,0 +1,167 @@
+package com.kozanoglu.controller.eventloop;
+
+import java.nio.charset.StandardCharsets;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.security.BearerToken;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.ClusterStatisticsService;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.SerializedStatistics;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.service.statistics.StatisticsStreamService;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+import com.kozanoglu.service.statistics.TransactionBatchService;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+public class EventLoopHandlerTest {
+
+    private StatisticsService statisticsService;
+    private StatisticsStreamService statisticsStreamService;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        statisticsService = new StatisticsServiceBuilder(window).build();
+        statisticsStreamService = new StatisticsStreamService(statisticsService, new ObjectMapper(), 1, 5000);
+        channel = channel(new IngestPipeline(statisticsService, false, 1, false, 1));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        statisticsStreamService.shutdown();
+    }
+
+    @Test
+    public void shouldLoginAndAnswerWithTheStatusesOfTheServletControllers() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        FullHttpResponse login = exchange(request(HttpMethod.POST, "/login", null, "{\"username\":\"admin\",\"password\":\"password\"}"));
+        String token = login.headers().get(BearerToken.HEADER);
+
+        // When
+        int accepted = exchange(request(HttpMethod.POST, "/transactions", token, "{\"amount\":1.5,\"timestamp\":" + now + "}")).status().code();
+        int invalid = exchange(request(HttpMethod.POST, "/transactions", token, "{\"amount\":1.5}")).status().code();
+        int stale = exchange(request(HttpMethod.POST, "/transactions", token, "{\"amount\":1.5,\"timestamp\":1}")).status().code();
+        int tooEarly = exchange(request(HttpMethod.POST, "/transactions", token,
+                "{\"amount\":1.5,\"timestamp\":" + (now + 600000) + "}")).status().code();
+        FullHttpResponse statistics = exchange(request(HttpMethod.GET, "/statistics/", token, null));
+
+        // Then
+        Assertions.assertThat(login.status().code()).isEqualTo(200);
+        Assertions.assertThat(new int[]{accepted, invalid, stale, tooEarly}).containsExactly(201, 418, 204, 422);
+        Assertions.assertThat(statistics.status().code()).isEqualTo(200);
+        Assertions.assertThat(statistics.content().toString(StandardCharsets.UTF_8)).contains("\"count\":1", "\"sum\":1.5");
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectRequestsWithoutValidToken() {
+
+        // When
+        int badLogin = exchange(request(HttpMethod.POST, "/login", null, "{\"username\":\"admin\",\"password\":\"x\"}")).status().code();
+        int anonymous = exchange(request(HttpMethod.GET, "/statistics/", null, null)).status().code();
+        int forged = exchange(request(HttpMethod.GET, "/statistics/", "Bearer forged", null)).status().code();
+        int unknown = exchange(request(HttpMethod.GET, "/unknown", BearerToken.create("admin"), null)).status().code();
+
+        // Then
+        Assertions.assertThat(new int[]{badLogin, anonymous, forged, unknown}).containsExactly(401, 403, 403, 404);
+    }
+
+    @Test
+    public void shouldPersistBatchesAndAnswerUnchangedStatisticsWithNotModified() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        String token = BearerToken.create("admin");
+
+        // When
+        FullHttpResponse batch = exchange(request(HttpMethod.POST, "/transactions/batch", token,
+                "[{\"amount\":1.0,\"timestamp\":" + now + "},{\"amount\":2.0,\"timestamp\":" + now + "}]"));
+        FullHttpResponse statistics = exchange(request(HttpMethod.GET, "/statistics/", token, null));
+        FullHttpRequest revalidation = request(HttpMethod.GET, "/statistics/", token, null);
+        revalidation.headers().set(HttpHeaderNames.IF_NONE_MATCH, statistics.headers().get(HttpHeaderNames.ETAG));
+        FullHttpResponse notModified = exchange(revalidation);
+
+        // Then
+        Assertions.assertThat(batch.status().code()).isEqualTo(200);
+        Assertions.assertThat(statistics.status().code()).isEqualTo(200);
+        Assertions.assertThat(statistics.headers().get(HttpHeaderNames.CACHE_CONTROL)).contains("private");
+        Assertions.assertThat(statistics.content().toString(StandardCharsets.UTF_8)).contains("\"count\":2", "\"sum\":3.0");
+        Assertions.assertThat(notModified.status().code()).isEqualTo(304);
+        Assertions.assertThat(notModified.content().readableBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldAnswerQueuedAndRejectedTransactionsOfAFullPipeline() {
+
+        // Given a fire and forget pipeline of a single slot which is never drained
+        channel.finishAndReleaseAll();
+        channel = channel(new IngestPipeline(statisticsService, true, 1, true, 1));
+        long now = System.currentTimeMillis();
+        String token = BearerToken.create("admin");
+
+        // When
+        FullHttpResponse queued = exchange(request(HttpMethod.POST, "/transactions", token, "{\"amount\":1.5,\"timestamp\":" + now + "}"));
+        FullHttpResponse rejected = exchange(request(HttpMethod.POST, "/transactions", token, "{\"amount\":2.5,\"timestamp\":" + now + "}"));
+
+        // Then
+        Assertions.assertThat(queued.status().code()).isEqualTo(202);
+        Assertions.assertThat(rejected.status().code()).isEqualTo(503);
+        Assertions.assertThat(rejected.headers().get(HttpHeaderNames.RETRY_AFTER)).isEqualTo("1");
+    }
+
+    private EmbeddedChannel channel(IngestPipeline ingestPipeline) {
+        StatisticsMetrics statisticsMetrics = new StatisticsMetrics(statisticsService, statisticsStreamService, ingestPipeline);
+        ObjectMapper objectMapper = new ObjectMapper();
+        return new EmbeddedChannel(new EventLoopHandler(statisticsService, ingestPipeline,
+                new TransactionBatchService(statisticsService, objectMapper),
+                new ClusterStatisticsService(statisticsService, new RestTemplate(), false, new String[0], 1000),
+                new SerializedStatistics(objectMapper, 1000),
+                statisticsMetrics,
+                authentication -> {
+                    if (!"password".equals(authentication.getCredentials())) {
+                        throw new BadCredentialsException("Bad credentials");
+                    }
+                    return new UsernamePasswordAuthenticationToken(authentication.getPrincipal(), null);
+                },
+                objectMapper,
+                // runs the requests which may block right away, so responses are written before exchange returns
+                ImmediateEventExecutor.INSTANCE, "1"));
+    }
+
+    private FullHttpResponse exchange(FullHttpRequest request) {
+        channel.writeInbound(request);
+        return channel.readOutbound();
+    }
+
+    private static FullHttpRequest request(HttpMethod method, String uri, String token, String body) {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri,
+                body == null ? Unpooled.EMPTY_BUFFER : Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+        if (token != null) {
+            request.headers().set(BearerToken.HEADER, token);
+        }
+        return request;
+    }
+}
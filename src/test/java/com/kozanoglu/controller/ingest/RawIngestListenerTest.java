@@ -0,0 +1,178 @@
+package com.kozanoglu.controller.ingest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.client.RawIngestClient;
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.model.statistics.TransactionRecords;
+import com.kozanoglu.security.IngestHandshake;
+import com.kozanoglu.service.metrics.StatisticsMetrics;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.service.statistics.StatisticsStreamService;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+import com.kozanoglu.service.statistics.TransactionBatchService;
+
+public class RawIngestListenerTest {
+
+    private static final byte[] KEY = "secret".getBytes(StandardCharsets.UTF_8);
+
+    private StatisticsService statisticsService;
+    private StatisticsStreamService statisticsStreamService;
+    private RawIngestListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        statisticsService = new StatisticsServiceBuilder(window).build();
+        statisticsStreamService = new StatisticsStreamService(statisticsService, new ObjectMapper(), 1, 5000);
+        StatisticsMetrics statisticsMetrics = new StatisticsMetrics(statisticsService, statisticsStreamService,
+                new IngestPipeline(statisticsService, false, 1, false, 1));
+        listener = new RawIngestListener(new TransactionBatchService(statisticsService, new ObjectMapper()),
+                statisticsMetrics, true, 0, 0, "secret", 1024, 2, 300);
+        listener.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        listener.stop();
+        statisticsStreamService.shutdown();
+    }
+
+    @Test
+    public void shouldPersistFramesAndDatagramsOfAnAuthenticatedConnection() throws Exception {
+
+        // Given
+        long now = System.currentTimeMillis();
+        try (RawIngestClient client = RawIngestClient.connect(tcp(), udp(), KEY, 64)) {
+
+            // When 100 records go out as frames of at most 64 and 2 more as a datagram
+            for (int i = 0; i < 100; i++) {
+                client.write(now - 1000, 1.0);
+            }
+            client.flush();
+            client.write(now, 5.0);
+            client.write(now, 0.5);
+            client.flushDatagram();
+
+            // Then
+            StatisticsResult result = awaitCount(102);
+            Assertions.assertThat(result.getCount()).isEqualTo(102);
+            Assertions.assertThat(result.getSum()).isEqualTo(105.5);
+            Assertions.assertThat(result.getMin()).isEqualTo(0.5);
+            Assertions.assertThat(result.getMax()).isEqualTo(5.0);
+        }
+    }
+
+    @Test
+    public void shouldCloseConnectionsWithAWrongKey() {
+
+        // When
+        Throwable thrown = Assertions.catchThrowable(() ->
+                RawIngestClient.connect(tcp(), udp(), "wrong".getBytes(StandardCharsets.UTF_8), 64));
+
+        // Then
+        Assertions.assertThat(thrown).isInstanceOf(IOException.class);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDropDatagramsSentFromAnotherAddressThanTheConnection() throws Exception {
+
+        // Given
+        long now = System.currentTimeMillis();
+        try (SocketChannel connection = SocketChannel.open(tcp());
+             DatagramChannel stranger = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.2", 0));
+             DatagramChannel owner = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            byte[] token = handshake(connection);
+
+            // When the token is replayed from another address before the owner sends a datagram
+            stranger.send(datagram(token, now, 7.0), udp());
+            owner.send(datagram(token, now, 1.0), udp());
+
+            // Then
+            StatisticsResult result = awaitCount(1);
+            Thread.sleep(100);
+            result = statisticsService.getStatisticsForTheLastMinute();
+            Assertions.assertThat(result.getCount()).isEqualTo(1);
+            Assertions.assertThat(result.getSum()).isEqualTo(1.0);
+        }
+    }
+
+    @Test
+    public void shouldCloseConnectionsBeyondTheCapAndThoseNotAnsweringInTime() throws Exception {
+
+        // Given two connections which never answer their nonce
+        try (SocketChannel first = SocketChannel.open(tcp());
+             SocketChannel second = SocketChannel.open(tcp())) {
+            readFully(first, ByteBuffer.allocate(IngestHandshake.NONCE_BYTES));
+            readFully(second, ByteBuffer.allocate(IngestHandshake.NONCE_BYTES));
+
+            // When
+            try (SocketChannel third = SocketChannel.open(tcp())) {
+
+                // Then the third one is closed right away and the first two once the handshake timed out
+                Assertions.assertThat(third.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+            }
+            Assertions.assertThat(first.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+            Assertions.assertThat(second.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+        }
+    }
+
+    private static byte[] handshake(SocketChannel connection) throws IOException {
+        byte[] nonce = new byte[IngestHandshake.NONCE_BYTES];
+        readFully(connection, ByteBuffer.wrap(nonce));
+        connection.write(ByteBuffer.wrap(IngestHandshake.sign(KEY, nonce)));
+        ByteBuffer reply = ByteBuffer.allocate(1 + IngestHandshake.TOKEN_BYTES);
+        readFully(connection, reply);
+        byte[] token = new byte[IngestHandshake.TOKEN_BYTES];
+        reply.position(1);
+        reply.get(token);
+        return token;
+    }
+
+    private static ByteBuffer datagram(byte[] token, long timestamp, double amount) {
+        ByteBuffer datagram = ByteBuffer.allocate(token.length + TransactionRecords.RECORD_BYTES);
+        datagram.put(token).putLong(timestamp).putDouble(amount);
+        datagram.flip();
+        return datagram;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new IOException("Closed");
+            }
+        }
+    }
+
+    private InetSocketAddress tcp() throws IOException {
+        return new InetSocketAddress("localhost", listener.getTcpPort());
+    }
+
+    private InetSocketAddress udp() throws IOException {
+        return new InetSocketAddress("localhost", listener.getUdpPort());
+    }
+
+    private StatisticsResult awaitCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        StatisticsResult result = statisticsService.getStatisticsForTheLastMinute();
+        while (result.getCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = statisticsService.getStatisticsForTheLastMinute();
+        }
+        return result;
+    }
+}
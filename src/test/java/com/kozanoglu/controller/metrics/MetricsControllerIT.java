@@ -0,0 +1,31 @@
+package com.kozanoglu.controller.metrics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MetricsControllerIT {
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void shouldServeMetricsWithoutAToken() {
+
+        // When
+        ResponseEntity<String> metrics = new RestTemplate().getForEntity(
+                "http://localhost:" + port + "/metrics", String.class);
+
+        // Then
+        Assertions.assertThat(metrics.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(metrics.getBody()).contains("transactions_ingested_total");
+    }
+}
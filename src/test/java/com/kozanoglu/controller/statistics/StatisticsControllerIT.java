@@ -1,16 +1,26 @@
 package com.kozanoglu.controller.statistics;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kozanoglu.model.statistics.StatisticsResult;
 import com.kozanoglu.model.statistics.Transaction;
+import com.kozanoglu.security.BearerToken;
 import com.kozanoglu.service.statistics.StatisticsService;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -18,12 +28,16 @@ import java.util.Date;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class StatisticsControllerIT {
 
+    @LocalServerPort
+    private int port;
     @Autowired
     private TransactionsController transactionsController;
     @Autowired
     private StatisticsController statisticsController;
     @Autowired
     private StatisticsService statisticsService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @Before
     public void clean()
@@ -32,7 +46,7 @@ public class StatisticsControllerIT {
     }
 
     @Test
-    public void shouldReturnExpectedStatistics() {
+    public void shouldReturnExpectedStatistics() throws IOException {
 
         // Given
         Date now = new Date();
@@ -47,7 +61,7 @@ public class StatisticsControllerIT {
         transactionsController.persistTransaction(transaction4);
 
         // When
-        StatisticsResult statistics = statisticsController.getStatistics();
+        StatisticsResult statistics = statistics();
 
         // Then
         Assertions.assertThat(statistics.getMin()).isEqualTo(1.2);
@@ -58,7 +72,7 @@ public class StatisticsControllerIT {
     }
 
     @Test
-    public void shouldIgnoreOutdatedTransactions() throws InterruptedException {
+    public void shouldIgnoreOutdatedTransactions() throws InterruptedException, IOException {
 
         // Given
         Calendar calendar = Calendar.getInstance();
@@ -81,7 +95,7 @@ public class StatisticsControllerIT {
         Thread.sleep(4000);
 
         // When
-        StatisticsResult statistics = statisticsController.getStatistics();
+        StatisticsResult statistics = statistics();
 
         // Then
         Assertions.assertThat(statistics.getMin()).isEqualTo(1.0);
@@ -91,4 +105,29 @@ public class StatisticsControllerIT {
         Assertions.assertThat(statistics.getAvg()).isEqualTo(1.0);
     }
 
+    @Test
+    public void shouldServeStatisticsOfAKeyNamedLikeAnotherEndpoint() {
+
+        // Given
+        transactionsController.persistTransaction(new Transaction(2.0, new Date().getTime(), "top"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(BearerToken.HEADER, BearerToken.create("admin"));
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+        RestTemplate restTemplate = new RestTemplate();
+
+        // When
+        ResponseEntity<StatisticsResult> keyed = restTemplate.exchange(
+                "http://localhost:" + port + "/statistics/keys/top", HttpMethod.GET, request, StatisticsResult.class);
+        ResponseEntity<Object[]> top = restTemplate.exchange(
+                "http://localhost:" + port + "/statistics/top", HttpMethod.GET, request, Object[].class);
+
+        // Then
+        Assertions.assertThat(keyed.getBody().getCount()).isEqualTo(1);
+        Assertions.assertThat(keyed.getBody().getSum()).isEqualTo(2.0);
+        Assertions.assertThat(top.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    private StatisticsResult statistics() throws IOException {
+        return objectMapper.readValue(statisticsController.getSerializedStatistics().getBody(), StatisticsResult.class);
+    }
 }
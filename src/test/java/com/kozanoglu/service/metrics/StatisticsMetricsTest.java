@@ -0,0 +1,108 @@
+package com.kozanoglu.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.service.statistics.IngestOutcome;
+import com.kozanoglu.service.statistics.IngestPipeline;
+import com.kozanoglu.service.statistics.StatisticsService;
+import com.kozanoglu.service.statistics.StatisticsServiceBuilder;
+import com.kozanoglu.service.statistics.StatisticsStreamService;
+import com.kozanoglu.service.statistics.StatisticsWindow;
+
+public class StatisticsMetricsTest {
+
+    private StatisticsService statisticsService;
+    private StatisticsStreamService statisticsStreamService;
+    private StatisticsMetrics statisticsMetrics;
+
+    @Before
+    public void setUp() {
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        statisticsService = new StatisticsServiceBuilder(window).build();
+        statisticsStreamService = new StatisticsStreamService(statisticsService, new ObjectMapper(), 1, 5000);
+        statisticsMetrics = new StatisticsMetrics(statisticsService, statisticsStreamService,
+                new IngestPipeline(statisticsService, false, 1, false, 1));
+    }
+
+    @After
+    public void tearDown() {
+        statisticsStreamService.shutdown();
+    }
+
+    @Test
+    public void shouldExposeIngestCountersAndWindowGauges() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        statisticsService.persist("a", now - 1000, 1.0);
+        statisticsService.persist(now - 1000, 2.0);
+        statisticsService.persist(now - 5000, 3.0);
+
+        // When
+        statisticsMetrics.recordIngest(IngestOutcome.ACCEPTED);
+        statisticsMetrics.recordIngest(IngestOutcome.ACCEPTED, 2);
+        statisticsMetrics.recordIngest(IngestOutcome.STALE, 0);
+        statisticsMetrics.recordIngest(IngestOutcome.TOO_EARLY);
+        statisticsMetrics.recordInvalid(4);
+        String scrape = statisticsMetrics.scrape();
+
+        // Then
+        Assertions.assertThat(scrape)
+                .contains("# TYPE transactions_ingested_total counter\n")
+                .contains("transactions_ingested_total{outcome=\"accepted\"} 3\n")
+                .contains("transactions_ingested_total{outcome=\"stale\"} 0\n")
+                .contains("transactions_ingested_total{outcome=\"too_early\"} 1\n")
+                .contains("transactions_invalid_total 4\n")
+                .contains("statistics_window_transactions 3\n")
+                .contains("statistics_window_buckets 61\n")
+                .contains("statistics_keys_live 1\n")
+                .contains("statistics_stream_subscribers 0\n");
+        Assertions.assertThat(scrape).containsPattern("statistics_window_buckets_occupied [23]\n");
+    }
+
+    @Test
+    public void shouldRenderCumulativeLatencyBucketsPerHandler() throws Exception {
+
+        // Given
+        StatisticsMetrics.HandlerMetrics single = statisticsMetrics.forHandler(Handlers.class.getMethod("single"));
+        StatisticsMetrics.HandlerMetrics overloaded = statisticsMetrics.forHandler(Handlers.class.getMethod("overloaded", long.class));
+
+        // When
+        single.record(201, TimeUnit.MICROSECONDS.toNanos(80));
+        single.record(201, TimeUnit.MILLISECONDS.toNanos(3));
+        single.record(418, TimeUnit.SECONDS.toNanos(30));
+        overloaded.record(200, TimeUnit.MICROSECONDS.toNanos(10));
+        String scrape = statisticsMetrics.scrape();
+
+        // Then
+        Assertions.assertThat(statisticsMetrics.forHandler(Handlers.class.getMethod("single"))).isSameAs(single);
+        Assertions.assertThat(scrape)
+                .contains("http_server_requests_total{handler=\"Handlers.single\",status=\"201\"} 2\n")
+                .contains("http_server_requests_total{handler=\"Handlers.single\",status=\"418\"} 1\n")
+                .contains("http_server_request_duration_seconds_bucket{handler=\"Handlers.single\",le=\"5.0E-5\"} 0\n")
+                .contains("http_server_request_duration_seconds_bucket{handler=\"Handlers.single\",le=\"1.0E-4\"} 1\n")
+                .contains("http_server_request_duration_seconds_bucket{handler=\"Handlers.single\",le=\"0.005\"} 2\n")
+                .contains("http_server_request_duration_seconds_bucket{handler=\"Handlers.single\",le=\"10.0\"} 2\n")
+                .contains("http_server_request_duration_seconds_bucket{handler=\"Handlers.single\",le=\"+Inf\"} 3\n")
+                .contains("http_server_request_duration_seconds_count{handler=\"Handlers.single\"} 3\n")
+                .contains("http_server_requests_total{handler=\"Handlers.overloaded(long)\",status=\"200\"} 1\n");
+    }
+
+    public static class Handlers {
+
+        public void single() {
+        }
+
+        public void overloaded() {
+        }
+
+        public void overloaded(long value) {
+        }
+    }
+}
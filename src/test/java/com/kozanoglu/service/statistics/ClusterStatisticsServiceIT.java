@@ -0,0 +1,127 @@
+package com.kozanoglu.service.statistics;
+
+import java.net.ServerSocket;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.security.BearerToken;
+
+/**
+ * The application on a random port is the peer, an aggregator of its own is built around it.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ClusterStatisticsServiceIT {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private StatisticsService peerStatisticsService;
+    @Autowired
+    @Qualifier("peerRestTemplate")
+    private RestTemplate peerRestTemplate;
+
+    private StatisticsService statisticsService;
+    private ClusterStatisticsService clusterStatisticsService;
+
+    @Before
+    public void setUp() {
+        peerStatisticsService.clearStatistics();
+        statisticsService = new StatisticsServiceBuilder(new StatisticsWindow(60000, 1000, false, false)).build();
+    }
+
+    @After
+    public void tearDown() {
+        if (clusterStatisticsService != null) {
+            clusterStatisticsService.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldMergeTheBucketsFetchedFromThePeer() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        statisticsService.persist(now, 1.0);
+        peerStatisticsService.persist(now, 2.0);
+        clusterStatisticsService = aggregatorOf(peerRestTemplate, "http://localhost:" + port);
+
+        // When
+        StatisticsResult result = clusterStatisticsService.getStatisticsForTheLastMinute();
+
+        // Then
+        Assertions.assertThat(result.getCount()).isEqualTo(2);
+        Assertions.assertThat(result.getSum()).isEqualTo(3.0);
+        Assertions.assertThat(result.getMax()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void shouldLeaveOutAPeerWhichDoesNotAnswerInTime() throws Exception {
+
+        // Given a peer which accepts connections but never answers
+        long now = System.currentTimeMillis();
+        statisticsService.persist(now, 1.0);
+        try (ServerSocket silent = new ServerSocket(0)) {
+            clusterStatisticsService = aggregatorOf(peerRestTemplate, "http://localhost:" + silent.getLocalPort());
+
+            // When
+            long started = System.currentTimeMillis();
+            StatisticsResult result = clusterStatisticsService.getStatisticsForTheLastMinute();
+            long elapsed = System.currentTimeMillis() - started;
+
+            // Then
+            Assertions.assertThat(result.getCount()).isEqualTo(1);
+            Assertions.assertThat(elapsed).isLessThan(2000);
+        }
+    }
+
+    @Test
+    public void shouldLeaveOutAPeerWhichRejectsTheToken() {
+
+        // Given requests to the peer carrying a forged token
+        long now = System.currentTimeMillis();
+        statisticsService.persist(now, 1.0);
+        peerStatisticsService.persist(now, 2.0);
+        RestTemplate forging = new RestTemplate(peerRestTemplate.getRequestFactory());
+        forging.setMessageConverters(peerRestTemplate.getMessageConverters());
+        forging.getInterceptors().add((request, body, execution) -> {
+            request.getHeaders().set(BearerToken.HEADER, "Bearer forged");
+            return execution.execute(request, body);
+        });
+        clusterStatisticsService = aggregatorOf(forging, "http://localhost:" + port);
+
+        // When
+        StatisticsResult result = clusterStatisticsService.getStatisticsForTheLastMinute();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(BearerToken.HEADER, "Bearer forged");
+        Throwable rejected = Assertions.catchThrowable(() -> peerRestTemplate.exchange(
+                "http://localhost:" + port + ClusterStatisticsService.EXPORT_PATH, HttpMethod.GET,
+                new HttpEntity<>(headers), byte[].class));
+
+        // Then only the local buckets are merged and the peer answers the forged token with 403
+        Assertions.assertThat(result.getCount()).isEqualTo(1);
+        Assertions.assertThat(result.getSum()).isEqualTo(1.0);
+        Assertions.assertThat(rejected).isInstanceOf(HttpClientErrorException.class);
+        Assertions.assertThat(((HttpClientErrorException) rejected).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    private ClusterStatisticsService aggregatorOf(RestTemplate restTemplate, String peer) {
+        return new ClusterStatisticsService(statisticsService, restTemplate, true, new String[]{peer}, 500);
+    }
+}
@@ -0,0 +1,76 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+public class ClusterStatisticsServiceTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    @Test
+    public void shouldMergeBucketsOfAllNodesWithinTheWindow() {
+
+        // Given
+        StatisticsWindow local = new StatisticsWindow(60000, 1000, false, false);
+        local.add(NOW - 1000, 2.0);
+        local.add(NOW - 30000, 10.0);
+
+        StatisticsWindow peer = new StatisticsWindow(60000, 1000, false, false);
+        peer.add(NOW - 1000, 1.0);
+        peer.add(NOW - 5000, 4.0);
+
+        byte[] localExport = BucketExport.encode(local.snapshot(NOW));
+        byte[] peerExport = BucketExport.encode(peer.snapshot(NOW));
+
+        // When the aggregator is two seconds ahead, the bucket thirty seconds old is still within the window
+        StatisticsResult result = ClusterStatisticsService.merge(Arrays.asList(localExport, peerExport), local, NOW + 2000);
+
+        // Then
+        Assertions.assertThat(result.getCount()).isEqualTo(4);
+        Assertions.assertThat(result.getSum()).isEqualTo(17.0);
+        Assertions.assertThat(result.getMin()).isEqualTo(1.0);
+        Assertions.assertThat(result.getMax()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void shouldLeaveOutBucketsWhichLeftTheWindowOfTheAggregator() {
+
+        // Given
+        StatisticsWindow peer = new StatisticsWindow(60000, 1000, false, false);
+        peer.add(NOW - 59500, 7.0);
+        peer.add(NOW - 100, 3.0);
+
+        // When
+        StatisticsResult result = ClusterStatisticsService.merge(
+                Arrays.asList(BucketExport.encode(peer.snapshot(NOW))), peer, NOW + 1000);
+
+        // Then
+        Assertions.assertThat(result.getCount()).isEqualTo(1);
+        Assertions.assertThat(result.getSum()).isEqualTo(3.0);
+    }
+
+    @Test
+    public void shouldFoldOnlyTheMergedBucketsOfTheSubWindow() {
+
+        // Given
+        StatisticsWindow local = new StatisticsWindow(60000, 1000, false, false);
+        local.add(NOW - 30000, 10.0);
+        local.add(NOW - 1000, 2.0);
+
+        StatisticsWindow peer = new StatisticsWindow(60000, 1000, false, false);
+        peer.add(NOW - 4000, 4.0);
+
+        // When
+        StatisticsResult result = ClusterStatisticsService.merge(Arrays.asList(
+                BucketExport.encode(local.snapshot(NOW)), BucketExport.encode(peer.snapshot(NOW))), local, NOW, 5000);
+
+        // Then
+        Assertions.assertThat(result.getCount()).isEqualTo(2);
+        Assertions.assertThat(result.getSum()).isEqualTo(6.0);
+        Assertions.assertThat(result.getMax()).isEqualTo(4.0);
+    }
+}
@@ -0,0 +1,164 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+public class IngestPipelineTest {
+
+    private StatisticsService statisticsService;
+
+    @Before
+    public void setUp() {
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        statisticsService = new StatisticsServiceBuilder(window).deduplicate(1000, 0.001).build();
+    }
+
+    @Test
+    public void shouldApplyEveryTransactionOfConcurrentProducersBeforeAnsweringThem() throws Exception {
+
+        // Given a ring much smaller than what the producers publish
+        IngestPipeline pipeline = new IngestPipeline(statisticsService, true, 64, false, 16);
+        pipeline.start();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        long now = System.currentTimeMillis();
+
+        // When
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int producer = 0; producer < 4; producer++) {
+            futures.add(producers.submit(() -> {
+                int accepted = 0;
+                for (int i = 0; i < 5000; i++) {
+                    IngestOutcome outcome;
+                    while ((outcome = pipeline.persist(i % 10 == 0 ? "key" : null, now - 1000, 2.0)) == IngestOutcome.REJECTED) {
+                        Thread.yield();
+                    }
+                    if (outcome == IngestOutcome.ACCEPTED) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+
+        int accepted = 0;
+        for (Future<Integer> future : futures) {
+            accepted += future.get();
+        }
+        producers.shutdown();
+        pipeline.stop();
+
+        // Then
+        StatisticsResult result = statisticsService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(accepted).isEqualTo(20000);
+        Assertions.assertThat(result.getCount()).isEqualTo(20000);
+        Assertions.assertThat(result.getSum()).isEqualTo(40000.0);
+        Assertions.assertThat(statisticsService.getStatisticsForKey("key").getCount()).isEqualTo(2000);
+        Assertions.assertThat(pipeline.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectWhenTheRingIsFullAndApplyQueuedTransactionsOnceDrained() throws Exception {
+
+        // Given an aggregator which isn't started yet, so nothing leaves the ring
+        IngestPipeline pipeline = new IngestPipeline(statisticsService, true, 4, true, 16);
+        long now = System.currentTimeMillis();
+
+        // When
+        List<IngestOutcome> outcomes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            outcomes.add(pipeline.persist(null, now, 1.0));
+        }
+        IngestOutcome stale = pipeline.persist(null, now - 120000, 1.0);
+        IngestOutcome tooEarly = pipeline.persist(null, now + 600000, 1.0);
+
+        // Then
+        Assertions.assertThat(outcomes).containsExactly(IngestOutcome.QUEUED, IngestOutcome.QUEUED,
+                IngestOutcome.QUEUED, IngestOutcome.QUEUED, IngestOutcome.REJECTED);
+        Assertions.assertThat(stale).isEqualTo(IngestOutcome.STALE);
+        Assertions.assertThat(tooEarly).isEqualTo(IngestOutcome.TOO_EARLY);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(0);
+
+        pipeline.start();
+        pipeline.stop();
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(4);
+        Assertions.assertThat(pipeline.persist(null, now, 1.0)).isEqualTo(IngestOutcome.QUEUED);
+    }
+
+    @Test
+    public void shouldPersistDirectlyWhenDisabled() {
+
+        // When
+        IngestOutcome outcome = new IngestPipeline(statisticsService, false, 1, true, 1)
+                .persist(null, System.currentTimeMillis(), 3.0);
+
+        // Then
+        Assertions.assertThat(outcome).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAnswerDuplicatesWithoutApplyingThem() throws Exception {
+
+        // Given
+        IngestPipeline pipeline = new IngestPipeline(statisticsService, true, 64, false, 16);
+        pipeline.start();
+        long now = System.currentTimeMillis();
+
+        // When
+        IngestOutcome first = pipeline.persist("tx-1", "key", now, 2.0);
+        IngestOutcome retry = pipeline.persist("tx-1", "key", now, 2.0);
+        IngestOutcome next = pipeline.persist("tx-2", null, now, 3.0);
+        pipeline.stop();
+
+        // Then
+        Assertions.assertThat(first).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(retry).isEqualTo(IngestOutcome.DUPLICATE);
+        Assertions.assertThat(next).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getSum()).isEqualTo(5.0);
+        Assertions.assertThat(statisticsService.getStatisticsForKey("key").getCount()).isEqualTo(1);
+        Assertions.assertThat(pipeline.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepDrainingAndAnswerProducersWhenApplyingFails() throws Exception {
+
+        // Given keyed statistics which fail for a single key
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        KeyedStatistics failing = new KeyedStatistics(60000, 1000, 3, 10) {
+            @Override
+            public void persist(String key, long timestamp, double amount, long now) {
+                if ("poison".equals(key)) {
+                    throw new IllegalStateException("poison");
+                }
+                super.persist(key, timestamp, amount, now);
+            }
+        };
+        StatisticsService service = new StatisticsServiceBuilder(window).keyedStatistics(failing).build();
+        IngestPipeline pipeline = new IngestPipeline(service, true, 4, false, 16);
+        pipeline.start();
+        long now = System.currentTimeMillis();
+
+        // When more transactions than the ring holds follow the failing one
+        IngestOutcome poisoned = pipeline.persist("poison", now, 1.0);
+        List<IngestOutcome> outcomes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            outcomes.add(pipeline.persist("key", now, 1.0));
+        }
+        pipeline.stop();
+
+        // Then
+        Assertions.assertThat(poisoned).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(outcomes).containsOnly(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(service.getStatisticsForKey("key").getCount()).isEqualTo(8);
+        Assertions.assertThat(pipeline.getPending()).isEqualTo(0);
+    }
+}
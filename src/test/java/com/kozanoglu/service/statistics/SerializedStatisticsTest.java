@@ -0,0 +1,53 @@
+package com.kozanoglu.service.statistics;
+
+import java.nio.charset.StandardCharsets;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+public class SerializedStatisticsTest {
+
+    private final SerializedStatistics serializedStatistics = new SerializedStatistics(new ObjectMapper(), 1000);
+
+    @Test
+    public void shouldSerializeOncePerVersionOfTheStatistics() throws Exception {
+
+        // Given
+        SerializedStatistics.Version first = serializedStatistics.of(statistics(3, 4.5));
+
+        // When the same statistics are read again, once as a fresh result and once changed
+        SerializedStatistics.Version same = serializedStatistics.of(statistics(3, 4.5));
+        SerializedStatistics.Version changed = serializedStatistics.of(statistics(4, 6.0));
+
+        // Then
+        Assertions.assertThat(same).isSameAs(first);
+        Assertions.assertThat(new String(first.getBody(), StandardCharsets.UTF_8)).contains("\"count\":3", "\"sum\":4.5");
+        Assertions.assertThat(first.getEtag()).matches("\"[0-9a-f]{16}\"");
+        Assertions.assertThat(changed.getEtag()).isNotEqualTo(first.getEtag());
+        Assertions.assertThat(serializedStatistics.getMaxAgeSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldGiveEqualStatisticsTheSameEtagAcrossInstances() throws Exception {
+
+        // When
+        String etag = serializedStatistics.of(statistics(3, 4.5)).getEtag();
+        String otherEtag = new SerializedStatistics(new ObjectMapper(), 1000).of(statistics(3, 4.5)).getEtag();
+
+        // Then
+        Assertions.assertThat(otherEtag).isEqualTo(etag);
+    }
+
+    private static StatisticsResult statistics(int count, double sum) {
+        StatisticsResult statistics = new StatisticsResult();
+        statistics.setCount(count);
+        statistics.setSum(sum);
+        statistics.setAvg(sum / count);
+        statistics.setMin(1.0);
+        statistics.setMax(2.0);
+        return statistics;
+    }
+}
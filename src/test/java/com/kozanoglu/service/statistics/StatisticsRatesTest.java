@@ -0,0 +1,94 @@
+package com.kozanoglu.service.statistics;
+
+import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Offset;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kozanoglu.model.statistics.RatesResult;
+
+public class StatisticsRatesTest {
+
+    // the start of an hour
+    private static final long HOUR = 1_499_997_600_000L;
+
+    private StatisticsWindow window;
+    private StatisticsRates rates;
+
+    @Before
+    public void setUp() {
+        window = new StatisticsWindow(60000, 1000, false, false);
+        rates = new StatisticsRates(window, true, 0);
+    }
+
+    @Test
+    public void shouldAverageASteadyRateOverOneFiveAndFifteenMinutes() {
+
+        // Given ten transactions of 2.0 per second for five minutes, with a tick in the middle of every second
+        for (int second = 0; second < 300; second++) {
+            for (int i = 0; i < 10; i++) {
+                window.add(HOUR + second * 1000L, 2.0);
+            }
+
+            // When
+            rates.onTick(HOUR + second * 1000L + 500);
+        }
+
+        // Then the bucket of the last tick is still open, 299 buckets are averaged
+        RatesResult result = rates.get();
+        Assertions.assertThat(result.getTimestamp()).isEqualTo(HOUR + 299_000);
+        Assertions.assertThat(result.getTransactions().getInstant()).isEqualTo(10.0);
+        Assertions.assertThat(result.getAmount().getInstant()).isEqualTo(20.0);
+        Assertions.assertThat(result.getTransactions().getM1()).isCloseTo(10 * (1 - Math.exp(-299 / 60.0)), Offset.offset(1e-9));
+        Assertions.assertThat(result.getTransactions().getM5()).isCloseTo(10 * (1 - Math.exp(-299 / 300.0)), Offset.offset(1e-9));
+        Assertions.assertThat(result.getTransactions().getM15()).isCloseTo(10 * (1 - Math.exp(-299 / 900.0)), Offset.offset(1e-9));
+        Assertions.assertThat(result.getAmount().getM15()).isCloseTo(20 * (1 - Math.exp(-299 / 900.0)), Offset.offset(1e-9));
+    }
+
+    @Test
+    public void shouldDecayOverBucketsWhichLeftTheWindowBeforeATick() {
+
+        // Given
+        for (int second = 0; second < 60; second++) {
+            window.add(HOUR + second * 1000L, 1.0);
+        }
+        rates.onTick(HOUR + 60_500);
+        double m15 = rates.get().getTransactions().getM15();
+
+        // When the next tick comes fifteen minutes later
+        rates.onTick(HOUR + 960_500);
+
+        // Then
+        RatesResult result = rates.get();
+        Assertions.assertThat(result.getTransactions().getInstant()).isEqualTo(0.0);
+        Assertions.assertThat(result.getTransactions().getM1()).isLessThan(1e-6);
+        Assertions.assertThat(result.getTransactions().getM15()).isCloseTo(m15 * Math.exp(-1), Offset.offset(1e-9));
+    }
+
+    @Test
+    public void shouldStartTheAveragesOverOnClear() {
+
+        // Given
+        for (int second = 0; second < 60; second++) {
+            window.add(HOUR + second * 1000L, 1.0);
+        }
+        rates.onTick(HOUR + 60_500);
+
+        // When
+        window.clear();
+        rates.clear();
+
+        // Then the averages are zero and the next tick folds the cleared window only
+        RatesResult cleared = rates.get();
+        Assertions.assertThat(cleared.getTimestamp()).isEqualTo(0);
+        Assertions.assertThat(cleared.getTransactions().getM15()).isEqualTo(0.0);
+        Assertions.assertThat(cleared.getAmount().getM15()).isEqualTo(0.0);
+        rates.onTick(HOUR + 61_500);
+        Assertions.assertThat(rates.get().getTransactions().getM15()).isEqualTo(0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectReadsWhenDisabled() {
+        new StatisticsRates(window, false, 0).get();
+    }
+}
@@ -0,0 +1,72 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kozanoglu.model.statistics.StatisticPerSecond;
+
+public class StatisticsRollupTest {
+
+    // the start of an hour
+    private static final long HOUR = 1_499_997_600_000L;
+
+    private StatisticsWindow window;
+    private StatisticsRollup rollup;
+
+    @Before
+    public void setUp() {
+        window = new StatisticsWindow(60000, 1000, false, false);
+        rollup = new StatisticsRollup(window, true, 0, 60, 24);
+    }
+
+    @Test
+    public void shouldRollSealedBucketsUpIntoMinutesAndHours() {
+
+        // Given
+        window.add(HOUR + 59_000, 1.0);
+        window.add(HOUR + 60_500, 2.0);
+        window.add(HOUR + 61_000, 4.0);
+        window.add(HOUR + 62_000, 8.0);
+
+        // When the bucket of the last transaction is still open
+        rollup.onTick(HOUR + 62_500);
+
+        // Then
+        List<StatisticPerSecond> minutes = rollup.range(HOUR, HOUR + StatisticsRollup.HOUR_MILLIS, StatisticsRollup.MINUTE_MILLIS);
+        Assertions.assertThat(minutes).extracting(StatisticPerSecond::getTimestamp).containsExactly(HOUR, HOUR + 60_000);
+        Assertions.assertThat(minutes).extracting(StatisticPerSecond::getSum).containsExactly(1.0, 6.0);
+
+        List<StatisticPerSecond> hours = rollup.range(HOUR, HOUR + 1, StatisticsRollup.HOUR_MILLIS);
+        Assertions.assertThat(hours).hasSize(1);
+        Assertions.assertThat(hours.get(0).getCount()).isEqualTo(3);
+        Assertions.assertThat(hours.get(0).getMin()).isEqualTo(1.0);
+        Assertions.assertThat(hours.get(0).getMax()).isEqualTo(4.0);
+    }
+
+    @Test
+    public void shouldRollEveryBucketUpOnlyOnce() {
+
+        // Given
+        window.add(HOUR + 1_000, 1.0);
+
+        // When
+        rollup.onTick(HOUR + 5_000);
+        rollup.onTick(HOUR + 6_000);
+
+        // Then
+        Assertions.assertThat(rollup.range(HOUR, HOUR + 60_000, 60_000).get(0).getCount()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectStepsWhichAreNoMultipleOfAMinute() {
+        rollup.range(HOUR, HOUR + 60_000, 1_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRangesWhosePointsOverflow() {
+        rollup.range(-9_000_000_000_000_000_000L, 9_000_000_000_000_000_000L, 60_000);
+    }
+}
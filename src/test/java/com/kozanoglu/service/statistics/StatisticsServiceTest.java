@@ -1,31 +1,50 @@
 package com.kozanoglu.service.statistics;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Percentage;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
-import org.mockito.runners.MockitoJUnitRunner;
+import org.junit.runners.Parameterized;
 
+import com.kozanoglu.model.statistics.KeyedStatisticsResult;
 import com.kozanoglu.model.statistics.StatisticPerSecond;
 import com.kozanoglu.model.statistics.StatisticsResult;
 import com.kozanoglu.model.statistics.Transaction;
 
 import static com.kozanoglu.util.TimeUtil.getSecondFromTimestamp;
 
-@RunWith(MockitoJUnitRunner.class)
+@RunWith(Parameterized.class)
 public class StatisticsServiceTest {
 
-    @InjectMocks
+    @Parameterized.Parameters(name = "striped={0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {{false}, {true}});
+    }
+
+    @Parameterized.Parameter
+    public boolean striped;
+
     private StatisticsService statisticsService;
 
     @Before
     public void clean()
     {
-        statisticsService.clearStatistics();
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, striped, true);
+        statisticsService = new StatisticsServiceBuilder(window).deduplicate(1000, 0.001).build();
     }
 
     @Test
@@ -117,4 +136,250 @@ public class StatisticsServiceTest {
         Assertions.assertThat(statisticsResult.getAvg()).isEqualTo(1.5);
         Assertions.assertThat(statisticsResult.getCount()).isEqualTo(3);
     }
+
+    @Test
+    public void shouldNotLoseTransactionsOfConcurrentWriters() throws InterruptedException {
+
+        // Given
+        int writers = 64;
+        int transactionsPerWriter = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        for (int i = 0; i < writers; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < transactionsPerWriter; j++) {
+                    statisticsService.persistTransaction(new Transaction(1.0, System.currentTimeMillis()));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        StatisticsResult statisticsResult = statisticsService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(statisticsResult.getCount()).isEqualTo(writers * transactionsPerWriter);
+        Assertions.assertThat(statisticsResult.getSum()).isEqualTo(writers * transactionsPerWriter * 1.0);
+        Assertions.assertThat(statisticsResult.getMin()).isEqualTo(1.0);
+        Assertions.assertThat(statisticsResult.getMax()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldNotAllocatePerPersistedTransaction() {
+
+        // Given
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long timestamp = System.currentTimeMillis();
+        int transactions = 100_000;
+
+        for (int i = 0; i < transactions; i++) {
+            statisticsService.persist(timestamp, 1.0);
+        }
+
+        // When
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < transactions; i++) {
+            statisticsService.persist(timestamp, 1.0);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Then the only allocation left is the measurement itself
+        Assertions.assertThat(allocated).isLessThan(1024);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(2 * transactions);
+    }
+
+    @Test
+    public void shouldAggregateSubSecondBucketsOfAConfiguredWindow() {
+
+        // Given the middle of a bucket, so the oldest bucket of the window starts 950 ms before now
+        long now = 1_500_000_000_050L;
+        StatisticsWindow window = new StatisticsWindow(1000, 100, striped, true);
+        statisticsService = new StatisticsServiceBuilder(window).clock(() -> now).build();
+
+        // When
+        statisticsService.persist(now, 1.0);
+        statisticsService.persist(now - 500, 2.0);
+        statisticsService.persist(now - 900, 3.0);
+        statisticsService.persist(now - 1000, 4.0);
+        statisticsService.persist(now - 1500, 5.0);
+
+        // Then
+        StatisticsResult statisticsResult = statisticsService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(statisticsResult.getCount()).isEqualTo(3);
+        Assertions.assertThat(statisticsResult.getSum()).isEqualTo(6.0);
+        Assertions.assertThat(statisticsResult.getMax()).isEqualTo(3.0);
+    }
+
+    @Test
+    public void shouldApproximatePercentilesOfTheWindow() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        for (int amount = 1; amount <= 100; amount++) {
+            statisticsService.persist(now - amount * 100, amount);
+        }
+
+        // When
+        StatisticsResult statisticsResult = statisticsService.getStatisticsForTheLastMinute(new double[] {50, 99, 100});
+
+        // Then
+        Assertions.assertThat(statisticsResult.getPercentiles()).containsOnlyKeys("p50", "p99", "p100");
+        Assertions.assertThat(statisticsResult.getPercentiles().get("p50")).isCloseTo(50.0, Percentage.withPercentage(4));
+        Assertions.assertThat(statisticsResult.getPercentiles().get("p99")).isCloseTo(99.0, Percentage.withPercentage(4));
+        Assertions.assertThat(statisticsResult.getPercentiles().get("p100")).isEqualTo(100.0);
+    }
+
+    @Test
+    public void shouldKeepStatisticsPerKey() {
+
+        // Given
+        long now = System.currentTimeMillis();
+
+        // When
+        statisticsService.persistTransaction(new Transaction(1.0, now, "EUR"));
+        statisticsService.persistTransaction(new Transaction(2.0, now, "EUR"));
+        statisticsService.persistTransaction(new Transaction(5.0, now, "USD"));
+        statisticsService.persistTransaction(new Transaction(4.0, now, "GBP"));
+
+        // Then
+        Assertions.assertThat(statisticsService.getStatisticsForKey("EUR").getSum()).isEqualTo(3.0);
+        Assertions.assertThat(statisticsService.getStatisticsForKey("CHF")).isNull();
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getSum()).isEqualTo(12.0);
+
+        List<KeyedStatisticsResult> top = statisticsService.getTopKeysBySum(2);
+        Assertions.assertThat(top).extracting(KeyedStatisticsResult::getKey).containsExactly("USD", "GBP");
+    }
+
+    @Test
+    public void shouldEvictIdleAndThenLeastRecentlyWrittenKeysBeyondTheCap() {
+
+        // Given
+        KeyedStatistics keyedStatistics = new KeyedStatistics(60000, 1000, 3, 10);
+        long now = System.currentTimeMillis();
+        keyedStatistics.persist("EUR", now - 70000, 1.0, now - 70000);
+        keyedStatistics.persist("USD", now - 2000, 1.0, now - 2000);
+        keyedStatistics.persist("GBP", now - 1000, 1.0, now - 1000);
+
+        // When
+        keyedStatistics.persist("CHF", now, 1.0, now);
+        keyedStatistics.persist("JPY", now, 1.0, now);
+
+        // Then
+        Assertions.assertThat(keyedStatistics.getStatistics("EUR", now)).isNull();
+        Assertions.assertThat(keyedStatistics.getStatistics("USD", now)).isNull();
+        Assertions.assertThat(keyedStatistics.getStatistics("GBP", now)).isNotNull();
+        Assertions.assertThat(keyedStatistics.getStatistics("JPY", now)).isNotNull();
+        Assertions.assertThat(keyedStatistics.getLiveKeys()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNeverExceedTheKeyCapUnderConcurrentNewKeys() throws Exception {
+
+        // Given
+        KeyedStatistics keyedStatistics = new KeyedStatistics(60000, 1000, 8, 10);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+
+        // When every thread keeps adding keys of its own
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int offset = thread;
+            futures.add(executorService.submit(() -> {
+                start.await();
+                int mostLiveKeys = 0;
+                for (int i = 0; i < 2000; i++) {
+                    keyedStatistics.persist("key-" + offset + "-" + i, now, 1.0, now);
+                    mostLiveKeys = Math.max(mostLiveKeys, keyedStatistics.getLiveKeys());
+                }
+                return mostLiveKeys;
+            }));
+        }
+        start.countDown();
+
+        // Then
+        for (Future<Integer> future : futures) {
+            Assertions.assertThat(future.get(30, TimeUnit.SECONDS)).isLessThanOrEqualTo(8);
+        }
+        executorService.shutdown();
+        Assertions.assertThat(keyedStatistics.getLiveKeys()).isBetween(1, 8);
+    }
+
+    @Test
+    public void shouldRankTopKeysOnTheTick() {
+
+        // Given
+        KeyedStatistics keyedStatistics = new KeyedStatistics(60000, 1000, 3, 2);
+        long now = System.currentTimeMillis();
+        keyedStatistics.persist("EUR", now, 1.0, now);
+        keyedStatistics.persist("USD", now, 2.0, now);
+        keyedStatistics.onTick(now);
+
+        // When
+        keyedStatistics.persist("GBP", now, 5.0, now);
+        List<KeyedStatisticsResult> beforeTick = keyedStatistics.getTopBySum(10, now);
+        keyedStatistics.onTick(now);
+        List<KeyedStatisticsResult> afterTick = keyedStatistics.getTopBySum(10, now);
+
+        // Then
+        Assertions.assertThat(beforeTick).extracting(KeyedStatisticsResult::getKey).containsExactly("USD", "EUR");
+        Assertions.assertThat(afterTick).extracting(KeyedStatisticsResult::getKey).containsExactly("GBP", "USD");
+    }
+
+    @Test
+    public void shouldCountSlightlyEarlyTransactionsAsNowAndRejectFurtherAheadOnes() {
+
+        // Given
+        long now = 1_500_000_000_500L;
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, striped, true);
+        statisticsService = new StatisticsServiceBuilder(window).clock(() -> now).build();
+
+        // When
+        IngestOutcome early = statisticsService.persist(now + 1500, 1.0);
+        IngestOutcome tooEarly = statisticsService.persist(now + 2001, 2.0);
+        IngestOutcome stale = statisticsService.persist(now - 60000, 3.0);
+
+        // Then
+        Assertions.assertThat(early).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(tooEarly).isEqualTo(IngestOutcome.TOO_EARLY);
+        Assertions.assertThat(stale).isEqualTo(IngestOutcome.STALE);
+        Assertions.assertThat(window.snapshot(now)).extracting(StatisticPerSecond::getTimestamp).containsExactly(1_500_000_000_000L);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getSum()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldCountATransactionSentAgainWithTheSameIdOnce() {
+
+        // Given
+        long now = System.currentTimeMillis();
+        Transaction transaction = new Transaction(1.5, now);
+        transaction.setId("tx-1");
+        Transaction early = new Transaction(2.5, now + 1500);
+        early.setId("tx-2");
+
+        // When
+        IngestOutcome first = statisticsService.persistTransaction(transaction);
+        IngestOutcome retry = statisticsService.persistTransaction(transaction);
+        IngestOutcome withoutId = statisticsService.persistTransaction(new Transaction(1.5, now));
+        IngestOutcome earlyFirst = statisticsService.persistTransaction(early);
+        IngestOutcome earlyRetry = statisticsService.persistTransaction(early);
+
+        // Then
+        Assertions.assertThat(first).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(retry).isEqualTo(IngestOutcome.DUPLICATE);
+        Assertions.assertThat(withoutId).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(earlyFirst).isEqualTo(IngestOutcome.ACCEPTED);
+        Assertions.assertThat(earlyRetry).isEqualTo(IngestOutcome.DUPLICATE);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getCount()).isEqualTo(3);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getSum()).isEqualTo(5.5);
+    }
 }
@@ -0,0 +1,138 @@
+package com.kozanoglu.service.statistics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+
+public class StatisticsSnapshotTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    private StatisticsWindow window;
+    private StatisticsSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        window = new StatisticsWindow(10000, 1000, false, false);
+        snapshot = new StatisticsSnapshot(window, true, 0);
+    }
+
+    @Test
+    public void shouldPublishSealedAndOpenBucketsOnTick() {
+
+        // Given
+        window.add(NOW - 9500, 5.0);
+        window.add(NOW - 5000, 1.0);
+        window.add(NOW - 100, 3.0);
+
+        // When
+        snapshot.onTick(NOW);
+
+        // Then
+        assertStatistics(snapshot.get(), 3, 9.0, 1.0, 5.0);
+    }
+
+    @Test
+    public void shouldExpireMinAndMaxOfBucketsLeavingTheWindow() {
+
+        // Given
+        window.add(NOW - 9500, 5.0);
+        window.add(NOW - 5000, 1.0);
+        window.add(NOW - 100, 3.0);
+        snapshot.onTick(NOW);
+
+        // When
+        snapshot.onTick(NOW + 1000);
+
+        // Then
+        assertStatistics(snapshot.get(), 2, 4.0, 1.0, 3.0);
+    }
+
+    @Test
+    public void shouldResealWhenSealedBucketIsWrittenLate() {
+
+        // Given
+        window.add(NOW - 5000, 1.0);
+        snapshot.onTick(NOW);
+
+        // When
+        window.add(NOW - 4000, 0.5);
+        snapshot.onWrite(window.bucketIndexOf(NOW - 4000), NOW);
+        snapshot.onTick(NOW + 10);
+
+        // Then
+        assertStatistics(snapshot.get(), 2, 1.5, 0.5, 1.0);
+    }
+
+    @Test
+    public void shouldAggregateSubWindowsAcrossTheWrapOfTheRing() {
+
+        // Given buckets on both sides of the slot the current bucket wraps to
+        long now = 1_500_000_000_000L + 4_500L;
+        window.add(now - 9000, 8.0);
+        window.add(now - 4000, 2.0);
+        window.add(now - 2000, 1.0);
+        window.add(now, 4.0);
+        snapshot.onTick(now);
+
+        // When
+        StatisticsResult lastSecond = snapshot.aggregate(now, 1000);
+        StatisticsResult lastFiveSeconds = snapshot.aggregate(now, 5000);
+        StatisticsResult wholeWindow = snapshot.aggregate(now, 10000);
+
+        // Then
+        assertStatistics(lastSecond, 1, 4.0, 4.0, 4.0);
+        assertStatistics(lastFiveSeconds, 3, 7.0, 1.0, 4.0);
+        assertStatistics(wholeWindow, 4, 15.0, 1.0, 8.0);
+    }
+
+    @Test
+    public void shouldDropSealedAndPublishedStatisticsOnClear() {
+
+        // Given
+        window.add(NOW - 5000, 1.0);
+        window.add(NOW - 100, 3.0);
+        snapshot.onTick(NOW);
+
+        // When
+        window.clear();
+        snapshot.clear();
+
+        // Then nothing is published until the next tick, and that one starts over from the cleared window
+        Assertions.assertThat(snapshot.get()).isNull();
+        assertStatistics(snapshot.aggregate(NOW, 10000), 0, 0.0, 0.0, 0.0);
+        window.add(NOW - 50, 2.0);
+        snapshot.onTick(NOW + 10);
+        assertStatistics(snapshot.get(), 1, 2.0, 2.0, 2.0);
+    }
+
+    @Test
+    public void shouldHandOutACopyOfThePublishedStatisticsToEveryReader() {
+
+        // Given
+        window.add(NOW - 100, 3.0);
+        snapshot.onTick(NOW);
+
+        // When a reader changes the statistics it was handed
+        StatisticsResult changed = snapshot.get();
+        changed.setCount(42);
+        changed.setMax(99.0);
+
+        // Then
+        assertStatistics(snapshot.get(), 1, 3.0, 3.0, 3.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSubWindowsLongerThanTheWindow() {
+        snapshot.aggregate(NOW, 11000);
+    }
+
+    private static void assertStatistics(StatisticsResult statistics, int count, double sum, double min, double max) {
+        Assertions.assertThat(statistics.getCount()).isEqualTo(count);
+        Assertions.assertThat(statistics.getSum()).isEqualTo(sum);
+        Assertions.assertThat(statistics.getMin()).isEqualTo(min);
+        Assertions.assertThat(statistics.getMax()).isEqualTo(max);
+    }
+}
@@ -0,0 +1,81 @@
+package com.kozanoglu.service.statistics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StatisticsStreamServiceTest {
+
+    private final StatisticsService statisticsService =
+            new StatisticsServiceBuilder(new StatisticsWindow(60000, 1000, false, false)).build();
+    // a single sender thread, so a stalled subscriber would hold all of them
+    private final StatisticsStreamService statisticsStreamService =
+            new StatisticsStreamService(statisticsService, new ObjectMapper(), 1, 100);
+
+    @After
+    public void tearDown() {
+        statisticsStreamService.shutdown();
+    }
+
+    @Test
+    public void shouldDropAStalledSubscriberAndKeepSendingToTheOthers() throws Exception {
+
+        // Given a subscriber whose sends are counted and got the first frame
+        AtomicInteger sent = new AtomicInteger();
+        statisticsStreamService.subscribe(new SseEmitter(0L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                sent.incrementAndGet();
+            }
+        });
+        statisticsService.persist(System.currentTimeMillis(), 1.0);
+        statisticsStreamService.onTick(System.currentTimeMillis());
+        awaitSent(sent, 1);
+
+        // and one whose sends block until released, holding the sender thread from the latest frame on
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(1);
+        statisticsStreamService.subscribe(new SseEmitter(0L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public synchronized void completeWithError(Throwable ex) {
+                dropped.countDown();
+            }
+        });
+
+        // When the statistics change after the send timeout
+        Thread.sleep(200);
+        statisticsService.persist(System.currentTimeMillis(), 2.0);
+        statisticsStreamService.onTick(System.currentTimeMillis());
+
+        // Then
+        awaitSent(sent, 2);
+        Assertions.assertThat(sent.get()).isEqualTo(2);
+        Assertions.assertThat(statisticsStreamService.getSubscribers()).isEqualTo(1);
+
+        release.countDown();
+        Assertions.assertThat(dropped.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void awaitSent(AtomicInteger sent, int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.get() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
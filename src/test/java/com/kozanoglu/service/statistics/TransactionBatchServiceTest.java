@@ -0,0 +1,179 @@
+package com.kozanoglu.service.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kozanoglu.client.TransactionRecordWriter;
+import com.kozanoglu.model.statistics.BatchResult;
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.model.statistics.Transaction;
+import com.kozanoglu.model.statistics.TransactionRecords;
+
+public class TransactionBatchServiceTest {
+
+    private StatisticsService statisticsService;
+    private TransactionBatchService transactionBatchService;
+
+    @Before
+    public void setUp() {
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, true);
+        statisticsService = new StatisticsServiceBuilder(window).deduplicate(1000, 0.001).build();
+        transactionBatchService = new TransactionBatchService(statisticsService, new ObjectMapper());
+    }
+
+    @Test
+    public void shouldPersistJsonArrayAndCountStaleAndInvalidTransactions() throws IOException {
+
+        // Given
+        long now = System.currentTimeMillis();
+        String body = "[" +
+                "{\"amount\": 1.2, \"timestamp\": " + now + "}," +
+                "{\"amount\": 1.5, \"timestamp\": " + (now - 1000) + "}," +
+                "{\"amount\": 1.8, \"timestamp\": " + now + "}," +
+                "{\"amount\": 99999.9, \"timestamp\": 123456578}," +
+                "{\"amount\": 2.0}," +
+                "{\"amount\": null, \"timestamp\": " + now + "}" +
+                "]";
+
+        // When
+        BatchResult result = transactionBatchService.persistTransactions(stream(body));
+
+        // Then
+        Assertions.assertThat(result.getAccepted()).isEqualTo(3);
+        Assertions.assertThat(result.getStale()).isEqualTo(1);
+        Assertions.assertThat(result.getInvalid()).isEqualTo(2);
+
+        StatisticsResult statisticsResult = statisticsService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(statisticsResult.getCount()).isEqualTo(3);
+        Assertions.assertThat(statisticsResult.getMin()).isEqualTo(1.2);
+        Assertions.assertThat(statisticsResult.getMax()).isEqualTo(1.8);
+        Assertions.assertThat(statisticsResult.getSum()).isEqualTo(4.5);
+    }
+
+    @Test
+    public void shouldPersistNdjsonAndKeepTransactionsReadBeforeMalformedLine() throws IOException {
+
+        // Given
+        long now = System.currentTimeMillis();
+        String body = "{\"amount\": 1.0, \"timestamp\": " + now + "}\n" +
+                "{\"amount\": 3.0, \"timestamp\": " + now + "}\n" +
+                "{\"amount\": 2.0, \"timestamp\": \n";
+
+        // When
+        BatchResult result = transactionBatchService.persistTransactions(stream(body));
+
+        // Then
+        Assertions.assertThat(result.getAccepted()).isEqualTo(2);
+        Assertions.assertThat(result.getInvalid()).isEqualTo(1);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getAvg()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void shouldDecodeRecordsSplitAcrossReadsAndCountIncompleteRecordAsInvalid() throws IOException {
+
+        // Given
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (TransactionRecordWriter writer = new TransactionRecordWriter(body)) {
+            for (int i = 0; i < 3000; i++) {
+                writer.write(now - (i % 50) * 1000, 2.0);
+            }
+            writer.write(123456578, 99999.9);
+            writer.write(now, Double.NaN);
+            writer.write(now + 600000, 1.0);
+        }
+        body.write(new byte[]{1, 2, 3});
+
+        // When the body arrives in reads of 7 bytes, so most records are split between two reads
+        BatchResult result = transactionBatchService.persistRecords(new FilterInputStream(new ByteArrayInputStream(body.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        });
+
+        // Then
+        Assertions.assertThat(result.getAccepted()).isEqualTo(3000);
+        Assertions.assertThat(result.getStale()).isEqualTo(1);
+        Assertions.assertThat(result.getTooEarly()).isEqualTo(1);
+        Assertions.assertThat(result.getInvalid()).isEqualTo(2);
+
+        StatisticsResult statisticsResult = statisticsService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(statisticsResult.getCount()).isEqualTo(3000);
+        Assertions.assertThat(statisticsResult.getSum()).isEqualTo(6000.0);
+        Assertions.assertThat(statisticsResult.getMax()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void shouldCountTransactionsWithAnIdSeenBeforeAsDuplicates() throws IOException {
+
+        // Given
+        long now = System.currentTimeMillis();
+        statisticsService.persistTransaction(transaction("tx-1", 1.0, now));
+        String body = "{\"id\": \"tx-1\", \"amount\": 1.0, \"timestamp\": " + now + "}\n" +
+                "{\"id\": \"tx-2\", \"amount\": 2.0, \"timestamp\": " + now + "}\n" +
+                "{\"id\": \"tx-2\", \"amount\": 2.0, \"timestamp\": " + now + "}\n" +
+                "{\"id\": 3, \"amount\": 3.0, \"timestamp\": " + now + "}\n" +
+                "{\"amount\": 3.0, \"timestamp\": " + now + "}\n";
+
+        // When
+        BatchResult result = transactionBatchService.persistTransactions(stream(body));
+
+        // Then
+        Assertions.assertThat(result.getAccepted()).isEqualTo(3);
+        Assertions.assertThat(result.getDuplicate()).isEqualTo(2);
+        Assertions.assertThat(statisticsService.getStatisticsForTheLastMinute().getSum()).isEqualTo(9.0);
+    }
+
+    @Test
+    public void shouldCountTransactionsWhoseBucketLeftTheWindowWhileReadingAsStale() throws IOException {
+
+        // Given a batch starting half a second into a bucket, its first record in the oldest bucket of the window
+        AtomicLong clock = new AtomicLong(1_000_000_500L);
+        StatisticsService clockedService = new StatisticsServiceBuilder(new StatisticsWindow(60000, 1000, false, true))
+                .clock(clock::get).build();
+        TransactionBatchService clockedBatchService = new TransactionBatchService(clockedService, new ObjectMapper());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (TransactionRecordWriter writer = new TransactionRecordWriter(body)) {
+            writer.write(clock.get() - 59_500, 1.0);
+            writer.write(clock.get(), 2.0);
+        }
+
+        // When the clock moves on by two buckets after the first record was read
+        BatchResult result = clockedBatchService.persistRecords(
+                new FilterInputStream(new ByteArrayInputStream(body.toByteArray())) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = super.read(b, off, Math.min(len, TransactionRecords.RECORD_BYTES));
+                        clock.addAndGet(2000);
+                        return read;
+                    }
+                });
+
+        // Then the first record is dropped on flush and reported as stale, in agreement with the window
+        Assertions.assertThat(result.getAccepted()).isEqualTo(1);
+        Assertions.assertThat(result.getStale()).isEqualTo(1);
+        StatisticsResult statisticsResult = clockedService.getStatisticsForTheLastMinute();
+        Assertions.assertThat(statisticsResult.getCount()).isEqualTo(1);
+        Assertions.assertThat(statisticsResult.getSum()).isEqualTo(2.0);
+    }
+
+    private static Transaction transaction(String id, double amount, long timestamp) {
+        Transaction transaction = new Transaction(amount, timestamp);
+        transaction.setId(id);
+        return transaction;
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,70 @@
+package com.kozanoglu.service.statistics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class TransactionDeduplicatorTest {
+
+    private static final long NOW = 1_500_000_000_500L;
+
+    @Test
+    public void shouldTakeTheSameIdOfTheSameBucketForADuplicateOnly() {
+
+        // Given
+        TransactionDeduplicator deduplicator = new TransactionDeduplicator(60000, 1000, 2000, true, 1000, 0.001);
+
+        // When
+        boolean first = deduplicator.isDuplicate("tx-1", NOW);
+        boolean retry = deduplicator.isDuplicate("tx-1", NOW);
+        boolean other = deduplicator.isDuplicate("tx-2", NOW);
+        boolean otherBucket = deduplicator.isDuplicate("tx-1", NOW - 1000);
+
+        // Then
+        Assertions.assertThat(first).isFalse();
+        Assertions.assertThat(retry).isTrue();
+        Assertions.assertThat(other).isFalse();
+        Assertions.assertThat(otherBucket).isFalse();
+    }
+
+    @Test
+    public void shouldForgetIdsOnceTheirBucketsSlotIsTakenByANewerBucket() {
+
+        // Given
+        TransactionDeduplicator deduplicator = new TransactionDeduplicator(60000, 1000, 2000, true, 1000, 0.001);
+        long old = NOW - 63000;
+        deduplicator.isDuplicate("tx-1", old);
+
+        // When
+        boolean newer = deduplicator.isDuplicate("tx-2", NOW);
+        boolean retryOfOld = deduplicator.isDuplicate("tx-1", old);
+
+        // Then
+        Assertions.assertThat(newer).isFalse();
+        Assertions.assertThat(retryOfOld).isFalse();
+    }
+
+    @Test
+    public void shouldKeepTheFalsePositiveRateAroundTheConfiguredOneAtTheExpectedIds() {
+
+        // Given
+        TransactionDeduplicator deduplicator = new TransactionDeduplicator(60000, 1000, 2000, true, 10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            deduplicator.isDuplicate("seen-" + i, NOW);
+        }
+        double estimatedAtTheExpectedIds = deduplicator.getEstimatedFalsePositiveRate();
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (deduplicator.isDuplicate("new-" + i, NOW)) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        Assertions.assertThat(falsePositives).isBetween(1, 60);
+        Assertions.assertThat(deduplicator.getFalsePositiveRate()).isEqualTo(0.01);
+        Assertions.assertThat(estimatedAtTheExpectedIds).isBetween(0.008, 0.012);
+        Assertions.assertThat(deduplicator.getEstimatedFalsePositiveRate()).isGreaterThan(estimatedAtTheExpectedIds);
+    }
+}
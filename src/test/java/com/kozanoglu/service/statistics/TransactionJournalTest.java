@@ -0,0 +1,142 @@
+package com.kozanoglu.service.statistics;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.kozanoglu.model.statistics.StatisticsResult;
+import com.kozanoglu.util.TimeSource;
+
+public class TransactionJournalTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReplayJournaledTransactionsAfterRestart() throws Exception {
+
+        // Given
+        TransactionJournal journal = journal(new StatisticsWindow(60000, 1000, false, false), 1024, () -> NOW);
+        journal.open();
+        journal.append(NOW - 2000, 5.0);
+        journal.append(NOW - 1000, 1.0);
+        journal.append(NOW - 120000, 100.0);
+        journal.close();
+
+        // When
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        journal(window, 1024, () -> NOW).open();
+
+        // Then
+        StatisticsResult result = window.aggregate(NOW);
+        Assertions.assertThat(result.getCount()).isEqualTo(2);
+        Assertions.assertThat(result.getSum()).isEqualTo(6.0);
+        Assertions.assertThat(result.getMin()).isEqualTo(1.0);
+        Assertions.assertThat(result.getMax()).isEqualTo(5.0);
+    }
+
+    @Test
+    public void shouldRollOverFullSegmentsAndReplayAllOfThem() throws Exception {
+
+        // Given
+        TransactionJournal journal = journal(new StatisticsWindow(60000, 1000, false, false),
+                4 * TransactionJournal.RECORD_BYTES, () -> NOW);
+        journal.open();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            journal.append(NOW - 1000, 1.0);
+        }
+        journal.close();
+
+        // Then
+        File[] segments = folder.getRoot().listFiles();
+        Assertions.assertThat(segments).hasSize(3);
+
+        StatisticsWindow window = new StatisticsWindow(60000, 1000, false, false);
+        journal(window, 4 * TransactionJournal.RECORD_BYTES, () -> NOW).open();
+        Assertions.assertThat(window.aggregate(NOW).getCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldDeleteSegmentsWithNothingLeftInTheWindowOnReplay() throws Exception {
+
+        // Given
+        TransactionJournal journal = journal(new StatisticsWindow(60000, 1000, false, false), 1024, () -> NOW);
+        journal.open();
+        journal.append(NOW - 120000, 1.0);
+        journal.close();
+
+        // When
+        TransactionJournal restarted = journal(new StatisticsWindow(60000, 1000, false, false), 1024, () -> NOW);
+        restarted.open();
+        restarted.close();
+
+        // Then only the fresh segment of the second run is left
+        Assertions.assertThat(folder.getRoot().listFiles()).hasSize(1);
+    }
+
+    @Test
+    public void shouldRollOverIntoTheSegmentCreatedAhead() throws Exception {
+
+        // Given the active segment and the one created ahead of the first rollover
+        TransactionJournal journal = journal(new StatisticsWindow(60000, 1000, false, false),
+                4 * TransactionJournal.RECORD_BYTES, () -> NOW);
+        journal.open();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (folder.getRoot().listFiles().length < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        File[] ahead = folder.getRoot().listFiles();
+        Arrays.sort(ahead);
+
+        // When the fifth record rolls the first segment over
+        for (int i = 0; i < 5; i++) {
+            journal.append(NOW - 1000, 1.0);
+        }
+        journal.close();
+
+        // Then it landed in the segment created ahead
+        Assertions.assertThat(ahead).hasSize(2);
+        Assertions.assertThat(ByteBuffer.wrap(Files.readAllBytes(ahead[1].toPath())).getLong(0)).isEqualTo(NOW - 1000);
+    }
+
+    @Test
+    public void shouldDeleteClosedSegmentsOnceTheyLeftTheWindowOfTheClock() throws Exception {
+
+        // Given a segment closed by the fifth record
+        AtomicLong clock = new AtomicLong(NOW);
+        TransactionJournal journal = journal(new StatisticsWindow(60000, 1000, false, false),
+                4 * TransactionJournal.RECORD_BYTES, clock::get);
+        journal.open();
+        for (int i = 0; i < 5; i++) {
+            journal.append(NOW, 1.0);
+        }
+        File first = folder.getRoot().toPath().resolve("journal-00000000000000000000.log").toFile();
+        boolean keptWithinTheWindow = first.exists();
+
+        // When the clock moved on by a window and the next rollover comes
+        clock.addAndGet(60000);
+        for (int i = 0; i < 4; i++) {
+            journal.append(clock.get(), 1.0);
+        }
+        journal.close();
+
+        // Then
+        Assertions.assertThat(keptWithinTheWindow).isTrue();
+        Assertions.assertThat(first).doesNotExist();
+    }
+
+    private TransactionJournal journal(StatisticsWindow window, int segmentBytes, TimeSource clock) {
+        return new TransactionJournal(window, true, folder.getRoot().toPath(), segmentBytes, 0, clock);
+    }
+}